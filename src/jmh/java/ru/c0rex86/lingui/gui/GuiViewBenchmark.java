@@ -0,0 +1,85 @@
+package ru.c0rex86.lingui.gui;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.c0rex86.lingui.script.BenchmarkServer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one viewer of a six row page with a static border and a row of dynamic items,
+ * while other players view the same page. {@code open} takes a pooled inventory and renders
+ * the shared layer plus the viewer's dynamic slots, {@code update} renders only the dynamic
+ * slots and, as their stacks come out the same, sends none of them, and {@code unpooled} is
+ * what a fresh inventory with every slot rendered and written would cost.
+ * Run with {@code -prof gc}: {@code gc.alloc.rate.norm} is the memory each viewer costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GuiViewBenchmark {
+    
+    @Param({"1", "50"})
+    public int viewers;
+    
+    private GuiPage page;
+    private InventoryPool pool;
+    private Player player;
+    
+    @Setup
+    public void setup() {
+        BenchmarkServer.install();
+        
+        GuiBuilder builder = new GuiBuilder("benchmark", "Benchmark", 6)
+                .fillBorder(new ItemStack(Material.BLACK_STAINED_GLASS_PANE));
+        for (int slot = 19; slot < 26; slot++) {
+            int amount = slot - 18;
+            builder.setDynamicItem(slot, (viewer, gui) -> new ItemStack(Material.PAPER, amount), (viewer, gui) -> true);
+        }
+        page = builder.build();
+        pool = new InventoryPool();
+        
+        for (int i = 1; i < viewers; i++) {
+            page.open(BenchmarkServer.player("Viewer" + i), pool);
+        }
+        player = BenchmarkServer.player();
+        page.open(player, pool);
+    }
+    
+    @Benchmark
+    public GuiView open() {
+        GuiView view = page.open(player, pool);
+        page.close(player, pool);
+        return view;
+    }
+    
+    @Benchmark
+    public GuiPage update() {
+        page.update(player);
+        return page;
+    }
+    
+    @Benchmark
+    public Inventory unpooled() {
+        Inventory inventory = Bukkit.createInventory(null, page.getRows() * 9, page.getTitle());
+        page.getItems().forEach((slot, item) -> inventory.setItem(slot, item.getItemStack(player, page)));
+        return inventory;
+    }
+}
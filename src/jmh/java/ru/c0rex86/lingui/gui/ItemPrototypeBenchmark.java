@@ -0,0 +1,98 @@
+package ru.c0rex86.lingui.gui;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.c0rex86.lingui.config.ItemConfig;
+import ru.c0rex86.lingui.script.BenchmarkServer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the items of 300 six row GUIs from their configs: a glass pane border, a row of
+ * buttons out of 20 kinds and a few items of their own. Everything a load allocates, bar
+ * the lookups, is held by the GUIs it returns, so with {@code -prof gc} the difference in
+ * {@code gc.alloc.rate.norm} between taking prototypes and building a copy per slot is the
+ * heap the prototype cache saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemPrototypeBenchmark {
+    
+    private static final int GUIS = 300;
+    private static final int ROWS = 6;
+    
+    @Param({"true", "false"})
+    public boolean prototypes;
+    
+    // The item configs of each GUI by slot, separate instances as read from the GUI files
+    private List<Map<Integer, ItemConfig>> guis;
+    
+    @Setup
+    public void setup() {
+        BenchmarkServer.install();
+        
+        guis = new ArrayList<>(GUIS);
+        for (int gui = 0; gui < GUIS; gui++) {
+            Map<Integer, ItemConfig> items = new LinkedHashMap<>();
+            for (int slot = 0; slot < ROWS * 9; slot++) {
+                int row = slot / 9;
+                int column = slot % 9;
+                if (row == 0 || row == ROWS - 1 || column == 0 || column == 8) {
+                    items.put(slot, item("BLACK_STAINED_GLASS_PANE", " ", null));
+                }
+            }
+            for (int button = 0; button < 7; button++) {
+                int kind = (gui + button) % 20;
+                items.put(19 + button, item("PAPER", "Button " + kind, List.of("Click to use", "Kind " + kind)));
+            }
+            for (int own = 0; own < 3; own++) {
+                items.put(37 + own, item("DIAMOND", "Reward " + gui + "-" + own, List.of("Only in GUI " + gui)));
+            }
+            guis.add(items);
+        }
+    }
+    
+    private static ItemConfig item(String material, String name, List<String> lore) {
+        ItemConfig config = new ItemConfig();
+        config.setMaterial(material);
+        config.setName(name);
+        config.setLore(lore);
+        return config;
+    }
+    
+    @Benchmark
+    public List<GuiPage> load() {
+        ItemUtils.clearPrototypes();
+        List<GuiPage> pages = new ArrayList<>(GUIS);
+        for (int i = 0; i < GUIS; i++) {
+            GuiPage page = new GuiPage("gui" + i, "GUI " + i, ROWS);
+            for (Map.Entry<Integer, ItemConfig> entry : guis.get(i).entrySet()) {
+                // One copy per slot without prototypes, which the item owns as is
+                GuiItem item = prototypes
+                        ? new GuiItem(ItemUtils.prototype(entry.getValue()))
+                        : GuiItem.owning(ItemUtils.fromConfig(entry.getValue()));
+                page.setItem(entry.getKey(), item);
+            }
+            page.layer();
+            pages.add(page);
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,82 @@
+package ru.c0rex86.lingui.gui;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.c0rex86.lingui.script.BenchmarkServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flipping through a paginated GUI over datasets of different sizes. The provider makes
+ * entries only when they are fetched, so with {@code -prof gc} the allocation per flip, and
+ * the heap after setup, should be the same whatever the number of entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaginatedGuiBenchmark {
+    
+    @Param({"1000", "20000", "1000000"})
+    public int entries;
+    
+    private PaginatedGui<Integer> gui;
+    private Player player;
+    private int pages;
+    
+    @Setup
+    public void setup() throws IOException {
+        int size = entries;
+        DataProvider<Integer> provider = new DataProvider<>() {
+            @Override
+            public int size() {
+                return size;
+            }
+            
+            @Override
+            public List<Integer> fetch(int offset, int limit) {
+                int end = Math.min(size, offset + limit);
+                List<Integer> page = new ArrayList<>(Math.max(0, end - offset));
+                for (int i = offset; i < end; i++) {
+                    page.add(i);
+                }
+                return page;
+            }
+        };
+        
+        gui = new PaginatedGui<>(BenchmarkServer.createPlugin(), "benchmark", "Benchmark", 6, provider,
+                (viewer, entry) -> new ItemStack(Material.PAPER, entry % 64 + 1))
+                .setNavigation(45, new ItemStack(Material.ARROW), 53, new ItemStack(Material.ARROW));
+        player = BenchmarkServer.player();
+        gui.open(player, new InventoryPool());
+        gui.onOpen(player);
+        pages = gui.getPageCount(player);
+    }
+    
+    @Benchmark
+    public int flip() {
+        if (gui.getPage(player) == pages - 1) {
+            gui.setPage(player, 0);
+        } else {
+            gui.nextPage(player);
+        }
+        return gui.getPage(player);
+    }
+}
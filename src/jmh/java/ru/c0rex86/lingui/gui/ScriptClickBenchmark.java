@@ -0,0 +1,74 @@
+package ru.c0rex86.lingui.gui;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.c0rex86.lingui.LinGUi;
+import ru.c0rex86.lingui.script.BenchmarkServer;
+import ru.c0rex86.lingui.script.ScriptHandle;
+import ru.c0rex86.lingui.script.ScriptManagerImpl;
+import ru.c0rex86.lingui.script.ScriptResult;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+/**
+ * A click on a scripted GUI item through the handler GUIs use, which runs the script from
+ * its handle in a pooled context reading the click variables in place, against a run in a
+ * fresh context with a copy of them. Run with {@code -prof gc} and compare
+ * {@code gc.alloc.rate.norm}, the bytes allocated per click; {@code ScriptClickAllocationTest}
+ * asserts the same handler stays near zero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptClickBenchmark {
+    
+    @Param({"INTERPRETED", "COMPILED"})
+    public ScriptManagerImpl.ExecutionTier tier;
+    
+    private ScriptManagerImpl scriptManager;
+    private Player player;
+    private GuiPage page;
+    private ScriptHandle handle;
+    private BiPredicate<Player, GuiPage> handler;
+    
+    @Setup
+    public void setup() throws IOException {
+        LinGUi plugin = BenchmarkServer.createPlugin();
+        plugin.getConfig().set("script.library-refresh-interval", 0);
+        
+        scriptManager = new ScriptManagerImpl(plugin);
+        scriptManager.setExecutionTier(tier);
+        player = BenchmarkServer.player();
+        page = new GuiBuilder("benchmark", "Benchmark", 1).build();
+        handle = scriptManager.handle(ScriptClickAllocationTest.SCRIPT);
+        handler = GuiManagerImpl.scriptClickHandler(scriptManager, handle, ScriptClickAllocationTest.SCRIPT, false);
+    }
+    
+    @Benchmark
+    public boolean pooled() {
+        return handler.test(player, page);
+    }
+    
+    @Benchmark
+    public ScriptResult fresh() {
+        Map<String, Object> variables = new HashMap<>(Map.of("player", player, "gui", page));
+        return scriptManager.execute(handle.get(), scriptManager.createContext(player, variables));
+    }
+}
@@ -0,0 +1,108 @@
+package ru.c0rex86.lingui.script;
+
+import ru.c0rex86.lingui.api.ScriptManager.ScriptFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex cascade that used to classify script lines, kept only as a benchmark baseline.
+ */
+final class LegacyRegexCompiler {
+    
+    private static final Pattern COMMAND_PATTERN = Pattern.compile("cmd:\\s*([^\\{\\}]+)(?:\\{([^\\}]+)\\})?(.*)");
+    private static final Pattern OPEN_GUI_PATTERN = Pattern.compile("open:\\s*([^\\s]+)(?:\\s+([^\\s]+))?");
+    private static final Pattern CLOSE_GUI_PATTERN = Pattern.compile("close");
+    private static final Pattern MESSAGE_PATTERN = Pattern.compile("msg:\\s*(.+)");
+    private static final Pattern CONSOLE_PATTERN = Pattern.compile("console:\\s*(.+)");
+    private static final Pattern PERMISSION_PATTERN = Pattern.compile("perm:\\s*(.+)");
+    private static final Pattern IF_PATTERN = Pattern.compile("if\\s+(.+)");
+    private static final Pattern ELSE_PATTERN = Pattern.compile("else");
+    private static final Pattern ENDIF_PATTERN = Pattern.compile("endif");
+    private static final Pattern LOOP_PATTERN = Pattern.compile("loop\\s+(\\d+)");
+    private static final Pattern ENDLOOP_PATTERN = Pattern.compile("endloop");
+    private static final Pattern SET_PATTERN = Pattern.compile("set\\s+([a-zA-Z0-9_]+)\\s+(.+)");
+    private static final Pattern MATH_PATTERN = Pattern.compile("math\\s+([a-zA-Z0-9_]+)\\s+([+\\-*/])\\s+(.+)");
+    
+    private final Map<String, ScriptFunction> functions;
+    
+    LegacyRegexCompiler(Map<String, ScriptFunction> functions) {
+        this.functions = functions;
+    }
+    
+    CompiledScript compile(String source) {
+        String[] lines = source.split("\n");
+        List<Instruction> instructions = new ArrayList<>(lines.length);
+        
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            instructions.add(compileLine(line, i + 1));
+        }
+        
+        return new CompiledScript(source, instructions.toArray(new Instruction[0]), false);
+    }
+    
+    private Instruction compileLine(String line, int lineNumber) {
+        Matcher matcher = IF_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.IF, lineNumber, line, matcher.group(1).trim());
+        }
+        if (ELSE_PATTERN.matcher(line).matches()) {
+            return new Instruction(Opcode.ELSE, lineNumber, line);
+        }
+        if (ENDIF_PATTERN.matcher(line).matches()) {
+            return new Instruction(Opcode.ENDIF, lineNumber, line);
+        }
+        matcher = LOOP_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.LOOP, lineNumber, line, matcher.group(1));
+        }
+        if (ENDLOOP_PATTERN.matcher(line).matches()) {
+            return new Instruction(Opcode.ENDLOOP, lineNumber, line);
+        }
+        matcher = COMMAND_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.COMMAND, lineNumber, line, matcher.group(1).trim());
+        }
+        matcher = OPEN_GUI_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.OPEN_GUI, lineNumber, line, matcher.group(1), matcher.group(2));
+        }
+        if (CLOSE_GUI_PATTERN.matcher(line).matches()) {
+            return new Instruction(Opcode.CLOSE_GUI, lineNumber, line);
+        }
+        matcher = MESSAGE_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.MESSAGE, lineNumber, line, matcher.group(1));
+        }
+        matcher = CONSOLE_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.CONSOLE, lineNumber, line, matcher.group(1));
+        }
+        matcher = PERMISSION_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.PERMISSION, lineNumber, line, matcher.group(1));
+        }
+        matcher = SET_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.SET, lineNumber, line, matcher.group(1), matcher.group(2));
+        }
+        matcher = MATH_PATTERN.matcher(line);
+        if (matcher.matches()) {
+            return new Instruction(Opcode.MATH, lineNumber, line, matcher.group(1), matcher.group(2), matcher.group(3));
+        }
+        if (line.contains(":")) {
+            String[] parts = line.split(":", 2);
+            String functionName = parts[0].trim();
+            return new Instruction(Opcode.FUNCTION, lineNumber, line, parts[1].trim().split("\\s+"), null,
+                    functionName, functions.get(functionName));
+        }
+        return new Instruction(Opcode.UNKNOWN, lineNumber, line);
+    }
+}
@@ -0,0 +1,83 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.c0rex86.lingui.LinGUi;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a script function call: the same loop body run inline and through
+ * {@code call} with two arguments and a returned value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptCallBenchmark {
+    
+    private static final String INLINE = String.join("\n",
+            "set total 0",
+            "loop 100",
+            "  set x {total}",
+            "  math x + 3",
+            "  set total {x}",
+            "endloop");
+    
+    private static final String CALL = String.join("\n",
+            "set total 0",
+            "loop 100",
+            "  call add {total} 3 -> total",
+            "endloop",
+            "func add(x, y)",
+            "  math x + {y}",
+            "  return {x}",
+            "endfunc");
+    
+    @Param({"INTERPRETED", "COMPILED"})
+    public ScriptManagerImpl.ExecutionTier tier;
+    
+    private ScriptManagerImpl scriptManager;
+    private Player player;
+    private CompiledScript inline;
+    private CompiledScript call;
+    
+    @Setup
+    public void setup() throws IOException {
+        LinGUi plugin = BenchmarkServer.createPlugin();
+        plugin.getConfig().set("script.timeout", 0);
+        plugin.getConfig().set("script.max-commands", Integer.MAX_VALUE);
+        plugin.getConfig().set("script.max-loop-iterations", Integer.MAX_VALUE);
+        plugin.getConfig().set("script.library-refresh-interval", 0);
+        
+        scriptManager = new ScriptManagerImpl(plugin);
+        scriptManager.setExecutionTier(tier);
+        player = BenchmarkServer.player();
+        inline = scriptManager.compile(INLINE);
+        call = scriptManager.compile(CALL);
+    }
+    
+    @Benchmark
+    public ScriptResult inline() {
+        return scriptManager.execute(inline, scriptManager.createContext(player, new HashMap<>()));
+    }
+    
+    @Benchmark
+    public ScriptResult call() {
+        return scriptManager.execute(call, scriptManager.createContext(player, new HashMap<>()));
+    }
+}
@@ -0,0 +1,66 @@
+package ru.c0rex86.lingui.script;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.c0rex86.lingui.api.ScriptManager.ScriptFunction;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the keyword dispatcher in {@link ScriptCompiler} against the old regex cascade
+ * on the scripts bundled with the plugin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptDispatchBenchmark {
+    
+    private static final String[] FUNCTION_NAMES = {
+            "cmd", "open", "close", "msg", "console", "perm", "set", "math", "random", "delay", "include",
+            "sound", "title", "subtitle", "actionbar", "particle", "firework", "heal", "feed", "persist", "load"
+    };
+    
+    @Param({"shop", "game", "rpg_dialog", "admin_tools"})
+    public String script;
+    
+    private String source;
+    private ScriptCompiler keywordCompiler;
+    private LegacyRegexCompiler regexCompiler;
+    
+    @Setup
+    public void setup() throws IOException {
+        Map<String, ScriptFunction> functions = new HashMap<>();
+        for (String name : FUNCTION_NAMES) {
+            functions.put(name, (context, args) -> true);
+        }
+        
+        source = BenchmarkServer.loadScript(script);
+        keywordCompiler = new ScriptCompiler(functions);
+        regexCompiler = new LegacyRegexCompiler(functions);
+    }
+    
+    @Benchmark
+    public CompiledScript keywordDispatch() {
+        return keywordCompiler.compile(source);
+    }
+    
+    @Benchmark
+    public CompiledScript regexCascade() {
+        return regexCompiler.compile(source);
+    }
+}
@@ -0,0 +1,119 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.c0rex86.lingui.LinGUi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the bundled scripts and their conditions through {@link ScriptManagerImpl} against a
+ * stub server. Run with {@code gradle jmh}; the gc profiler is enabled in the build, so every
+ * result comes with its allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptEngineBenchmark {
+    
+    private static final String[] SCRIPTS = {"shop", "game", "rpg_dialog", "admin_tools"};
+    
+    @Param({"shop", "game", "rpg_dialog", "admin_tools"})
+    public String script;
+    
+    @Param({"INTERPRETED", "COMPILED"})
+    public ScriptManagerImpl.ExecutionTier tier;
+    
+    private ScriptManagerImpl scriptManager;
+    private Player player;
+    private String source;
+    private Map<String, Object> variables;
+    private String[] conditions;
+    private ScriptContext conditionContext;
+    
+    @Setup
+    public void setup() throws IOException {
+        LinGUi plugin = BenchmarkServer.createPlugin(SCRIPTS);
+        // Limits would stop a script after a few iterations of the benchmark loop
+        plugin.getConfig().set("script.timeout", 0);
+        plugin.getConfig().set("script.max-commands", Integer.MAX_VALUE);
+        plugin.getConfig().set("script.max-loop-iterations", Integer.MAX_VALUE);
+        plugin.getConfig().set("script.library-refresh-interval", 0);
+        
+        scriptManager = new ScriptManagerImpl(plugin);
+        scriptManager.setExecutionTier(tier);
+        player = BenchmarkServer.player();
+        source = BenchmarkServer.loadScript(script);
+        variables = variables(script);
+        conditions = conditions(source);
+        conditionContext = scriptManager.createContext(player, variables);
+    }
+    
+    @Benchmark
+    public ScriptResult executeScript() {
+        return scriptManager.executeScript(source, player, variables);
+    }
+    
+    @Benchmark
+    public void evaluateCondition(Blackhole blackhole) {
+        for (String condition : conditions) {
+            blackhole.consume(scriptManager.evaluateCondition(condition, conditionContext));
+        }
+    }
+    
+    /**
+     * The variables a GUI click would pass in, chosen so each script takes its main branch.
+     */
+    private static Map<String, Object> variables(String script) {
+        Map<String, Object> variables = new HashMap<>();
+        switch (script) {
+            case "shop":
+                variables.put("action", "buy");
+                variables.put("item_name", "diamond");
+                variables.put("item_price", "10");
+                break;
+            case "game":
+                variables.put("action", "guess");
+                variables.put("guess", "50");
+                break;
+            case "rpg_dialog":
+                variables.put("player_response", "1");
+                break;
+            default:
+                break;
+        }
+        return variables;
+    }
+    
+    private static String[] conditions(String source) {
+        List<String> conditions = new ArrayList<>();
+        for (String line : source.split("\n")) {
+            line = line.trim();
+            if (line.startsWith("if ")) {
+                conditions.add(line.substring(3).trim());
+            } else if (line.startsWith("elif ")) {
+                conditions.add(line.substring(5).trim());
+            }
+        }
+        return conditions.toArray(new String[0]);
+    }
+}
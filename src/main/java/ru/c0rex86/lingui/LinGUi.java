@@ -2,7 +2,9 @@ package ru.c0rex86.lingui;
 
 import org.bstats.bukkit.Metrics;
 import org.bukkit.Bukkit;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 import ru.c0rex86.lingui.api.GuiManager;
 import ru.c0rex86.lingui.api.ScriptManager;
 import ru.c0rex86.lingui.commands.LinGuiCommand;
@@ -11,8 +13,11 @@ import ru.c0rex86.lingui.config.CommandBindingManager;
 import ru.c0rex86.lingui.config.ConfigManager;
 import ru.c0rex86.lingui.gui.GuiManagerImpl;
 import ru.c0rex86.lingui.listeners.GuiListener;
+import ru.c0rex86.lingui.script.GlobalVariableStore;
+import ru.c0rex86.lingui.script.PlayerVariableStore;
 import ru.c0rex86.lingui.script.ScriptManagerImpl;
 
+import java.io.File;
 import java.util.logging.Level;
 
 public class LinGUi extends JavaPlugin {
@@ -22,8 +27,21 @@ public class LinGUi extends JavaPlugin {
     private ScriptManager scriptManager;
     private ConfigManager configManager;
     private CommandBindingManager commandBindingManager;
+    private PlayerVariableStore playerVariableStore;
+    private GlobalVariableStore globalVariableStore;
     private static final int BSTATS_ID = 20000;
     
+    public LinGUi() {
+        super();
+    }
+    
+    /**
+     * Creates the plugin outside a running server, e.g. for benchmarks.
+     */
+    protected LinGUi(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
+    
     @Override
     public void onEnable() {
         instance = this;
@@ -32,6 +50,11 @@ public class LinGUi extends JavaPlugin {
         configManager = new ConfigManager(this);
         configManager.loadConfigs();
         
+        playerVariableStore = new PlayerVariableStore(this);
+        playerVariableStore.start();
+        globalVariableStore = new GlobalVariableStore(this);
+        globalVariableStore.start();
+        
         guiManager = new GuiManagerImpl(this);
         scriptManager = new ScriptManagerImpl(this);
         commandBindingManager = new CommandBindingManager(this);
@@ -47,7 +70,16 @@ public class LinGUi extends JavaPlugin {
     
     @Override
     public void onDisable() {
-        guiManager.closeAllGuis();
+        if (guiManager instanceof GuiManagerImpl) {
+            ((GuiManagerImpl) guiManager).shutdown();
+        } else {
+            guiManager.closeAllGuis();
+        }
+        if (scriptManager instanceof ScriptManagerImpl) {
+            ((ScriptManagerImpl) scriptManager).shutdown();
+        }
+        playerVariableStore.shutdown();
+        globalVariableStore.shutdown();
         getLogger().info("LinGUi has been disabled!");
     }
     
@@ -70,6 +102,13 @@ public class LinGUi extends JavaPlugin {
             reloadConfig();
             configManager.loadConfigs();
             commandBindingManager.loadBindings();
+            if (scriptManager instanceof ScriptManagerImpl) {
+                ((ScriptManagerImpl) scriptManager).reloadSettings();
+                ((ScriptManagerImpl) scriptManager).getLibrary().load();
+            }
+            if (guiManager instanceof GuiManagerImpl) {
+                ((GuiManagerImpl) guiManager).reloadSettings();
+            }
             guiManager.reloadGuis();
             getLogger().info("LinGUi has been reloaded successfully!");
         } catch (Exception e) {
@@ -96,4 +135,12 @@ public class LinGUi extends JavaPlugin {
     public CommandBindingManager getCommandBindingManager() {
         return commandBindingManager;
     }
+    
+    public PlayerVariableStore getPlayerVariableStore() {
+        return playerVariableStore;
+    }
+    
+    public GlobalVariableStore getGlobalVariableStore() {
+        return globalVariableStore;
+    }
 } 
\ No newline at end of file
@@ -2,18 +2,32 @@ package ru.c0rex86.lingui.api;
 
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
+import ru.c0rex86.lingui.gui.DataProvider;
 import ru.c0rex86.lingui.gui.GuiBuilder;
 import ru.c0rex86.lingui.gui.GuiPage;
+import ru.c0rex86.lingui.gui.PaginatedGui;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BiFunction;
 
 public interface GuiManager {
     
     GuiBuilder createGui(String id, String title, int rows);
     
+    /**
+     * Create a GUI that lists the entries of a provider a page at a time, with buttons to
+     * flip pages in the bottom row. Register it like any other GUI.
+     *
+     * @param renderer Makes the item shown for an entry
+     */
+    default <T> PaginatedGui<T> createPaginatedGui(String id, String title, int rows, DataProvider<T> provider,
+                                                   BiFunction<Player, T, ItemStack> renderer) {
+        throw new UnsupportedOperationException("createPaginatedGui not implemented");
+    }
+    
     boolean registerGui(GuiPage gui);
     
     boolean unregisterGui(String id);
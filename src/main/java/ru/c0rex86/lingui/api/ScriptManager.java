@@ -1,12 +1,17 @@
 package ru.c0rex86.lingui.api;
 
 import org.bukkit.entity.Player;
+import ru.c0rex86.lingui.script.CompiledScript;
+import ru.c0rex86.lingui.script.ScriptArguments;
 import ru.c0rex86.lingui.script.ScriptContext;
 import ru.c0rex86.lingui.script.ScriptResult;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface ScriptManager {
     
@@ -29,6 +34,54 @@ public interface ScriptManager {
      */
     ScriptResult executeScript(String scriptContent, ScriptContext context);
     
+    /**
+     * Compile a script into its reusable instruction form. Compiled scripts are cached
+     * by content, so compiling the same source again returns the cached instance.
+     *
+     * @param scriptContent The script content to compile
+     * @return The compiled script
+     */
+    default CompiledScript compile(String scriptContent) {
+        throw new UnsupportedOperationException("compile not implemented");
+    }
+    
+    /**
+     * Execute a previously compiled script with the given script context.
+     *
+     * @param script The compiled script
+     * @param context The script context
+     * @return The result of the script execution
+     */
+    default ScriptResult execute(CompiledScript script, ScriptContext context) {
+        throw new UnsupportedOperationException("execute not implemented");
+    }
+    
+    /**
+     * Execute a previously compiled script for a player. The variables are read in place
+     * rather than copied and must not change while the script runs.
+     *
+     * @param script The compiled script
+     * @param player The player executing the script
+     * @param variables Variables to use in the script
+     * @return The result of the script execution
+     */
+    default ScriptResult execute(CompiledScript script, Player player, Map<String, Object> variables) {
+        throw new UnsupportedOperationException("execute not implemented");
+    }
+    
+    /**
+     * Execute a compiled script off the main thread. Commands, messages, GUI changes and
+     * other effects on the server are applied in order on the main thread afterwards.
+     * Scripts that start with {@code async} are run this way by {@link #execute} too.
+     *
+     * @param script The compiled script
+     * @param context A script context that is not running another script
+     * @return The result, completed on the main thread once the effects are applied
+     */
+    default CompletableFuture<ScriptResult> executeAsync(CompiledScript script, ScriptContext context) {
+        throw new UnsupportedOperationException("executeAsync not implemented");
+    }
+    
     /**
      * Execute a script from a file.
      *
@@ -50,6 +103,19 @@ public interface ScriptManager {
      */
     boolean registerScriptFunction(String name, ScriptFunction function);
     
+    /**
+     * Register a script function with a typed signature. Calls are checked against the
+     * signature when scripts compile and arguments arrive converted and unboxed.
+     *
+     * @param name The name of the function
+     * @param signature The parameter types of the function
+     * @param function The function implementation
+     * @return True if the function was registered, false if it already exists
+     */
+    default boolean registerScriptFunction(String name, ScriptSignature signature, TypedScriptFunction function) {
+        throw new UnsupportedOperationException("registerScriptFunction not implemented");
+    }
+    
     /**
      * Unregister a script function.
      *
@@ -101,6 +167,16 @@ public interface ScriptManager {
         throw new UnsupportedOperationException("evaluateCondition not implemented");
     }
     
+    /**
+     * Get the contexts of scripts that are currently suspended by a delay, or by a
+     * {@code foreach} waiting for the next tick; see {@link ScriptContext#getForEachProgress()}.
+     *
+     * @return The suspended script contexts
+     */
+    default Collection<ScriptContext> getSuspendedScripts() {
+        return Collections.emptyList();
+    }
+    
     /**
      * Interface for script functions.
      */
@@ -109,9 +185,26 @@ public interface ScriptManager {
          * Execute the function.
          *
          * @param context The script context
-         * @param args The arguments
+         * @param args The arguments. Arguments written as plain numbers are passed as
+         *             Integer or Double, so {@code String.valueOf} still gives the text
+         *             the script used; all other arguments are Strings.
          * @return The result of the function execution
          */
         Object execute(ScriptContext context, Object... args);
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Interface for script functions registered with a {@link ScriptSignature}.
+     */
+    interface TypedScriptFunction {
+        /**
+         * Execute the function.
+         *
+         * @param context The script context
+         * @param args The arguments, converted to the signature's types. Only valid until
+         *             the function returns.
+         * @return The result of the function execution
+         */
+        Object execute(ScriptContext context, ScriptArguments args);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package ru.c0rex86.lingui.api;
+
+/**
+ * The parameter list of a typed script function. Calls are checked against it when a script
+ * is compiled: a wrong number of arguments, or a constant argument of the wrong type, is a
+ * compile error instead of a failure when the line runs.
+ */
+public final class ScriptSignature {
+    
+    /**
+     * Parameter types. Arguments are converted to these once for constants and on every call
+     * for arguments with placeholders.
+     */
+    public enum Type {
+        INT,
+        DOUBLE,
+        STRING,
+        /** An online player, looked up by name when the call runs */
+        PLAYER,
+        MATERIAL,
+        SOUND,
+        PARTICLE,
+        FIREWORK_TYPE
+    }
+    
+    private final int required;
+    private final Type[] types;
+    
+    private ScriptSignature(int required, Type[] types) {
+        if (required < 0 || required > types.length) {
+            throw new IllegalArgumentException("Required parameters must be between 0 and " + types.length);
+        }
+        this.required = required;
+        this.types = types;
+    }
+    
+    /**
+     * A signature where every parameter is required.
+     */
+    public static ScriptSignature of(Type... types) {
+        return new ScriptSignature(types.length, types.clone());
+    }
+    
+    /**
+     * A signature where only the first {@code required} parameters must be given.
+     */
+    public static ScriptSignature optional(int required, Type... types) {
+        return new ScriptSignature(required, types.clone());
+    }
+    
+    public int getRequired() {
+        return required;
+    }
+    
+    public int getArity() {
+        return types.length;
+    }
+    
+    public Type getType(int index) {
+        return types[index];
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            if (i == required) {
+                builder.append('[');
+            }
+            builder.append(types[i].name().toLowerCase());
+        }
+        if (required < types.length) {
+            builder.append(']');
+        }
+        return builder.append(')').toString();
+    }
+}
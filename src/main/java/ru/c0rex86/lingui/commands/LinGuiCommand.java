@@ -1,5 +1,6 @@
 package ru.c0rex86.lingui.commands;
 
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -7,10 +8,22 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import ru.c0rex86.lingui.LinGUi;
+import ru.c0rex86.lingui.gui.ItemUtils;
+import ru.c0rex86.lingui.script.CompiledScript;
+import ru.c0rex86.lingui.script.ForEachProgress;
+import ru.c0rex86.lingui.script.ScriptContext;
+import ru.c0rex86.lingui.script.ScriptManagerImpl;
+import ru.c0rex86.lingui.script.ScriptProfiler;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class LinGuiCommand implements CommandExecutor, TabCompleter {
@@ -20,7 +33,7 @@ public class LinGuiCommand implements CommandExecutor, TabCompleter {
     
     public LinGuiCommand(LinGUi plugin) {
         this.plugin = plugin;
-        this.subCommands = Arrays.asList("reload", "help", "info", "list", "bind", "unbind");
+        this.subCommands = Arrays.asList("reload", "help", "info", "list", "bind", "unbind", "scripts", "profile");
     }
     
     @Override
@@ -106,6 +119,32 @@ public class LinGuiCommand implements CommandExecutor, TabCompleter {
                 }
                 break;
             
+            case "scripts":
+                if (!hasPermission(sender, "lingui.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+                    return true;
+                }
+                
+                if (args.length >= 3 && args[1].equalsIgnoreCase("cancel")) {
+                    cancelSuspendedScripts(sender, args[2]);
+                } else {
+                    sendSuspendedScripts(sender);
+                }
+                break;
+            
+            case "profile":
+                if (!hasPermission(sender, "lingui.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+                    return true;
+                }
+                
+                if (args.length < 2) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /" + label + " profile <start|stop|dump>");
+                    return true;
+                }
+                handleProfile(sender, args[1].toLowerCase());
+                break;
+            
             default:
                 sender.sendMessage(ChatColor.RED + "Unknown subcommand: " + subCommand);
                 sendHelp(sender);
@@ -127,6 +166,8 @@ public class LinGuiCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(ChatColor.YELLOW + "/lingui list" + ChatColor.GRAY + " - List all GUIs");
         sender.sendMessage(ChatColor.YELLOW + "/lingui bind <command> <guiId>" + ChatColor.GRAY + " - Bind a command to a GUI");
         sender.sendMessage(ChatColor.YELLOW + "/lingui unbind <command>" + ChatColor.GRAY + " - Unbind a command");
+        sender.sendMessage(ChatColor.YELLOW + "/lingui scripts [cancel <player>]" + ChatColor.GRAY + " - List or cancel delayed scripts");
+        sender.sendMessage(ChatColor.YELLOW + "/lingui profile <start|stop|dump>" + ChatColor.GRAY + " - Profile scripts");
         sender.sendMessage(ChatColor.YELLOW + "/opengui <guiId> [player]" + ChatColor.GRAY + " - Open a GUI");
     }
     
@@ -138,6 +179,8 @@ public class LinGuiCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(ChatColor.YELLOW + "GitHub: " + ChatColor.WHITE + "https://github.com/c0rex86/");
         sender.sendMessage(ChatColor.YELLOW + "Registered GUIs: " + ChatColor.WHITE + plugin.getGuiManager().getRegisteredGuiIds().size());
         sender.sendMessage(ChatColor.YELLOW + "Command Bindings: " + ChatColor.WHITE + plugin.getCommandBindingManager().getCommandBindings().size());
+        sender.sendMessage(ChatColor.YELLOW + "Item Prototypes: " + ChatColor.WHITE + ItemUtils.getPrototypeCount()
+                + " (" + ItemUtils.getSharedCount() + " shared)");
     }
     
     private void sendGuiList(CommandSender sender) {
@@ -154,6 +197,104 @@ public class LinGuiCommand implements CommandExecutor, TabCompleter {
         }
     }
     
+    private void sendSuspendedScripts(CommandSender sender) {
+        Collection<ScriptContext> scripts = plugin.getScriptManager().getSuspendedScripts();
+        
+        if (scripts.isEmpty()) {
+            sender.sendMessage(ChatColor.RED + "No suspended scripts!");
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        sender.sendMessage(ChatColor.GOLD + "=== Suspended Scripts ===");
+        for (ScriptContext context : scripts) {
+            long remaining = Math.max(0, context.getResumeAt() - now);
+            ForEachProgress progress = context.getForEachProgress();
+            sender.sendMessage(ChatColor.YELLOW + "- " + getOwnerName(context) + ChatColor.GRAY
+                    + " at line " + context.getCurrentLine() + ", resumes in " + remaining + "ms"
+                    + (progress != null ? ", foreach " + progress : ""));
+        }
+    }
+    
+    private void cancelSuspendedScripts(CommandSender sender, String playerName) {
+        int cancelled = 0;
+        for (ScriptContext context : plugin.getScriptManager().getSuspendedScripts()) {
+            if (getOwnerName(context).equalsIgnoreCase(playerName)) {
+                context.cancel();
+                cancelled++;
+            }
+        }
+        
+        if (cancelled > 0) {
+            sender.sendMessage(ChatColor.GREEN + "Cancelled " + cancelled + " script(s) of " + playerName);
+        } else {
+            sender.sendMessage(ChatColor.RED + "No suspended scripts for " + playerName);
+        }
+    }
+    
+    private void handleProfile(CommandSender sender, String action) {
+        if (!(plugin.getScriptManager() instanceof ScriptManagerImpl)) {
+            sender.sendMessage(ChatColor.RED + "Profiling is not supported by the current script manager!");
+            return;
+        }
+        ScriptManagerImpl scriptManager = (ScriptManagerImpl) plugin.getScriptManager();
+        
+        switch (action) {
+            case "start":
+                if (scriptManager.startProfiling()) {
+                    sender.sendMessage(ChatColor.GREEN + "Script profiling started.");
+                } else {
+                    sender.sendMessage(ChatColor.RED + "Script profiling is already running!");
+                }
+                break;
+            
+            case "stop":
+                if (scriptManager.stopProfiling()) {
+                    sender.sendMessage(ChatColor.GREEN + "Script profiling stopped. Use /lingui profile dump to write the report.");
+                } else {
+                    sender.sendMessage(ChatColor.RED + "Script profiling is not running!");
+                }
+                break;
+            
+            case "dump":
+                dumpProfile(sender, scriptManager);
+                break;
+            
+            default:
+                sender.sendMessage(ChatColor.RED + "Unknown profile action: " + action);
+                break;
+        }
+    }
+    
+    private void dumpProfile(CommandSender sender, ScriptManagerImpl scriptManager) {
+        ScriptProfiler profiler = scriptManager.getProfiler();
+        if (profiler == null) {
+            sender.sendMessage(ChatColor.RED + "No profile recorded yet! Use /lingui profile start first.");
+            return;
+        }
+        
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(plugin.getDataFolder(), "profiles/profile-" + timestamp + ".txt");
+        Map<CompiledScript, String> names = scriptManager.getScriptNames();
+        
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            String message;
+            try {
+                profiler.write(file, names);
+                message = ChatColor.GREEN + "Profile of " + profiler.getScriptCount() + " script(s) written to "
+                        + plugin.getDataFolder().getName() + "/profiles/" + file.getName();
+            } catch (IOException e) {
+                message = ChatColor.RED + "Failed to write profile: " + e.getMessage();
+            }
+            String result = message;
+            Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage(result));
+        });
+    }
+    
+    private String getOwnerName(ScriptContext context) {
+        return context.getPlayer() != null ? context.getPlayer().getName() : "console";
+    }
+    
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
@@ -168,6 +309,12 @@ public class LinGuiCommand implements CommandExecutor, TabCompleter {
                 return plugin.getCommandBindingManager().getCommandBindings().keySet().stream()
                         .filter(s -> s.startsWith(args[1].toLowerCase()))
                         .collect(Collectors.toList());
+            } else if (args[0].equalsIgnoreCase("scripts")) {
+                return "cancel".startsWith(args[1].toLowerCase()) ? Arrays.asList("cancel") : new ArrayList<>();
+            } else if (args[0].equalsIgnoreCase("profile")) {
+                return Arrays.asList("start", "stop", "dump").stream()
+                        .filter(s -> s.startsWith(args[1].toLowerCase()))
+                        .collect(Collectors.toList());
             }
         } else if (args.length == 3) {
             if (args[0].equalsIgnoreCase("bind")) {
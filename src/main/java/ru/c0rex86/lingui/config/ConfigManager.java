@@ -84,6 +84,7 @@ public class ConfigManager {
                     
                     guiConfig.setTitle(config.getString("title", "GUI"));
                     guiConfig.setRows(config.getInt("rows", 3));
+                    guiConfig.setAsyncScripts(config.getBoolean("async-scripts", false));
                     
                     if (config.contains("items")) {
                         for (String slotStr : config.getConfigurationSection("items").getKeys(false)) {
@@ -122,6 +123,7 @@ public class ConfigManager {
         
         yamlConfig.set("title", config.getTitle());
         yamlConfig.set("rows", config.getRows());
+        yamlConfig.set("async-scripts", config.isAsyncScripts() ? true : null);
         yamlConfig.set("items", null);
         
         for (Map.Entry<Integer, ItemConfig> entry : config.getItems().entrySet()) {
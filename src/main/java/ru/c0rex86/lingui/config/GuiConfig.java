@@ -8,6 +8,7 @@ public class GuiConfig {
     private String title;
     private int rows;
     private Map<Integer, ItemConfig> items;
+    private boolean asyncScripts;
     
     public GuiConfig() {
         this.title = "GUI";
@@ -31,6 +32,17 @@ public class GuiConfig {
         this.rows = Math.min(6, Math.max(1, rows));
     }
     
+    /**
+     * @return Whether item scripts of this GUI run off the main thread
+     */
+    public boolean isAsyncScripts() {
+        return asyncScripts;
+    }
+    
+    public void setAsyncScripts(boolean asyncScripts) {
+        this.asyncScripts = asyncScripts;
+    }
+    
     public Map<Integer, ItemConfig> getItems() {
         return items;
     }
@@ -0,0 +1,66 @@
+package ru.c0rex86.lingui.gui;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The entries behind a {@link PaginatedGui}, read one page at a time so a GUI over a large
+ * dataset only ever holds the pages its viewers are looking at.
+ *
+ * @param <T> The type of the entries
+ */
+public interface DataProvider<T> {
+    
+    /**
+     * @return The number of entries
+     */
+    int size();
+    
+    /**
+     * Count the entries without blocking the server; asked together with the page whenever a
+     * viewer moves to another page. Runs {@link #size} right away unless overridden; the
+     * future may complete on any thread.
+     */
+    default CompletableFuture<Integer> sizeAsync() {
+        try {
+            return CompletableFuture.completedFuture(size());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * @return Up to {@code limit} entries starting at {@code offset}
+     */
+    List<T> fetch(int offset, int limit);
+    
+    /**
+     * Fetch a page without blocking the server, e.g. from a database. Runs {@link #fetch}
+     * right away unless overridden; the future may complete on any thread.
+     */
+    default CompletableFuture<List<T>> fetchAsync(int offset, int limit) {
+        try {
+            return CompletableFuture.completedFuture(fetch(offset, limit));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    /**
+     * A provider over a list that is already in memory. Pages are copied out of it, so the
+     * list may change while viewers are looking at it.
+     */
+    static <T> DataProvider<T> of(List<T> entries) {
+        return new DataProvider<>() {
+            @Override
+            public int size() {
+                return entries.size();
+            }
+            
+            @Override
+            public List<T> fetch(int offset, int limit) {
+                return List.copyOf(entries.subList(Math.min(offset, entries.size()), Math.min(offset + limit, entries.size())));
+            }
+        };
+    }
+}
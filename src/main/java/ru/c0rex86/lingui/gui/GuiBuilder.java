@@ -30,50 +30,73 @@ public class GuiBuilder {
         return this;
     }
     
+    /**
+     * A dynamic item that automatic refreshes render again only when its inputs change.
+     */
+    public GuiBuilder setDynamicItem(int slot, BiFunction<Player, GuiPage, ItemStack> itemSupplier,
+                                     BiFunction<Player, GuiPage, Object> inputs, BiPredicate<Player, GuiPage> clickHandler) {
+        guiPage.setItem(slot, new GuiItem(itemSupplier, clickHandler).setInputs(inputs));
+        return this;
+    }
+    
     public GuiBuilder setItemMetadata(int slot, String key, Object value) {
         guiPage.getItem(slot).ifPresent(item -> item.setMetadata(key, value));
         return this;
     }
     
     public GuiBuilder fillRow(int row, ItemStack itemStack) {
-        if (row >= 0 && row < guiPage.getRows()) {
-            for (int i = 0; i < 9; i++) {
-                setItem(row * 9 + i, itemStack);
-            }
-        }
+        fillRowWith(row, itemStack.clone());
         return this;
     }
     
     public GuiBuilder fillColumn(int column, ItemStack itemStack) {
         if (column >= 0 && column < 9) {
+            ItemStack filler = itemStack.clone();
             for (int i = 0; i < guiPage.getRows(); i++) {
-                setItem(i * 9 + column, itemStack);
+                fill(i * 9 + column, filler);
             }
         }
         return this;
     }
     
     public GuiBuilder fillBorder(ItemStack itemStack) {
-        fillRow(0, itemStack);
-        fillRow(guiPage.getRows() - 1, itemStack);
+        ItemStack filler = itemStack.clone();
+        fillRowWith(0, filler);
+        fillRowWith(guiPage.getRows() - 1, filler);
         
         for (int i = 1; i < guiPage.getRows() - 1; i++) {
-            setItem(i * 9, itemStack);
-            setItem(i * 9 + 8, itemStack);
+            fill(i * 9, filler);
+            fill(i * 9 + 8, filler);
         }
         
         return this;
     }
     
     public GuiBuilder fillEmpty(ItemStack itemStack) {
+        ItemStack filler = itemStack.clone();
         for (int i = 0; i < guiPage.getRows() * 9; i++) {
             if (!guiPage.getItem(i).isPresent()) {
-                setItem(i, itemStack);
+                fill(i, filler);
             }
         }
         return this;
     }
     
+    private void fillRowWith(int row, ItemStack filler) {
+        if (row >= 0 && row < guiPage.getRows()) {
+            for (int i = 0; i < 9; i++) {
+                fill(row * 9 + i, filler);
+            }
+        }
+    }
+    
+    /**
+     * Place one copy of a fill item, shared by all the slots it fills.
+     */
+    private void fill(int slot, ItemStack filler) {
+        guiPage.setItem(slot, GuiItem.owning(filler));
+    }
+    
     public GuiBuilder setOpenAction(Consumer<Player> openAction) {
         guiPage.setOpenAction(openAction);
         return this;
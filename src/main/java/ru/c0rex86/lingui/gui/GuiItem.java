@@ -13,15 +13,32 @@ public class GuiItem {
     private ItemStack itemStack;
     private BiPredicate<Player, GuiPage> clickHandler;
     private BiFunction<Player, GuiPage, ItemStack> dynamicItemSupplier;
+    private BiFunction<Player, GuiPage, Object> inputs;
     private Map<String, Object> metadata;
     private boolean dynamic;
+    // The page this item was last placed on, told when the item turns dynamic
+    GuiPage page;
     
+    /**
+     * The stack is copied, so changing it afterwards does not change the item. Prototypes
+     * from {@link ItemUtils#prototype} are kept as they are, since they are never modified.
+     */
     public GuiItem(ItemStack itemStack) {
-        this.itemStack = itemStack;
+        this.itemStack = itemStack != null && !ItemUtils.isPrototype(itemStack) ? itemStack.clone() : itemStack;
         this.metadata = new HashMap<>();
         this.dynamic = false;
     }
     
+    /**
+     * An item that takes the stack over without copying it, for a stack nothing else holds
+     * or modifies.
+     */
+    static GuiItem owning(ItemStack itemStack) {
+        GuiItem item = new GuiItem((ItemStack) null);
+        item.itemStack = itemStack;
+        return item;
+    }
+    
     public GuiItem(ItemStack itemStack, BiPredicate<Player, GuiPage> clickHandler) {
         this(itemStack);
         this.clickHandler = clickHandler;
@@ -37,6 +54,14 @@ public class GuiItem {
         return itemStack.clone();
     }
     
+    /**
+     * The stack itself rather than a copy, for rendering. It may be a prototype shared with
+     * other items and must not be modified.
+     */
+    ItemStack getPrototype() {
+        return itemStack;
+    }
+    
     public ItemStack getItemStack(Player player, GuiPage guiPage) {
         if (dynamic && dynamicItemSupplier != null) {
             return dynamicItemSupplier.apply(player, guiPage);
@@ -53,12 +78,37 @@ public class GuiItem {
         return this;
     }
     
+    /**
+     * Make the item dynamic. If it is already placed, its page moves it out of the shared
+     * static items.
+     */
     public GuiItem setDynamicItemSupplier(BiFunction<Player, GuiPage, ItemStack> dynamicItemSupplier) {
         this.dynamicItemSupplier = dynamicItemSupplier;
-        this.dynamic = true;
+        if (!dynamic) {
+            this.dynamic = true;
+            if (page != null) {
+                page.itemChanged(this);
+            }
+        }
         return this;
     }
     
+    /**
+     * Declare what the dynamic item is rendered from, e.g. a balance or a cooldown. While
+     * the returned value stays equal, automatic refreshes keep the item as it is.
+     */
+    public GuiItem setInputs(BiFunction<Player, GuiPage, Object> inputs) {
+        this.inputs = inputs;
+        return this;
+    }
+    
+    /**
+     * @return The current inputs of the dynamic item, or null if it declares none
+     */
+    public Object getInputs(Player player, GuiPage guiPage) {
+        return inputs != null ? inputs.apply(player, guiPage) : null;
+    }
+    
     public boolean isDynamic() {
         return dynamic;
     }
@@ -4,22 +4,33 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import ru.c0rex86.lingui.LinGUi;
 import ru.c0rex86.lingui.api.GuiManager;
+import ru.c0rex86.lingui.api.ScriptManager;
 import ru.c0rex86.lingui.config.GuiConfig;
+import ru.c0rex86.lingui.script.CompiledScript;
+import ru.c0rex86.lingui.script.ScriptHandle;
+import ru.c0rex86.lingui.script.ScriptManagerImpl;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 
 public class GuiManagerImpl implements GuiManager {
     
     private final LinGUi plugin;
     private final Map<String, GuiPage> registeredGuis;
     private final Map<UUID, GuiPage> openGuis;
+    private final InventoryPool inventoryPool;
+    private final GuiRefreshScheduler refreshScheduler;
     
     public GuiManagerImpl(LinGUi plugin) {
         this.plugin = plugin;
         this.registeredGuis = new HashMap<>();
         this.openGuis = new ConcurrentHashMap<>();
+        this.inventoryPool = new InventoryPool();
+        this.refreshScheduler = new GuiRefreshScheduler(plugin);
         loadDefaultGuis();
+        refreshScheduler.start();
     }
     
     private void loadDefaultGuis() {
@@ -33,6 +44,18 @@ public class GuiManagerImpl implements GuiManager {
         return new GuiBuilder(id, title, rows);
     }
     
+    @Override
+    public <T> PaginatedGui<T> createPaginatedGui(String id, String title, int rows, DataProvider<T> provider,
+                                                  BiFunction<Player, T, ItemStack> renderer) {
+        PaginatedGui<T> gui = new PaginatedGui<>(plugin, id, title, rows, provider, renderer);
+        if (gui.getRows() > 1) {
+            int bottom = (gui.getRows() - 1) * 9;
+            gui.setNavigation(bottom, ItemUtils.createItem("ARROW", "Previous page"),
+                    bottom + 8, ItemUtils.createItem("ARROW", "Next page"));
+        }
+        return gui;
+    }
+    
     @Override
     public boolean registerGui(GuiPage gui) {
         if (registeredGuis.containsKey(gui.getId())) {
@@ -60,6 +83,7 @@ public class GuiManagerImpl implements GuiManager {
                 Player player = plugin.getServer().getPlayer(entry.getKey());
                 if (player != null) {
                     player.closeInventory();
+                    entry.getValue().close(player, inventoryPool);
                 }
                 it.remove();
             }
@@ -86,20 +110,35 @@ public class GuiManagerImpl implements GuiManager {
         GuiPage gui = optionalGui.get();
         closeGui(player);
         
-        gui.update(player);
-        player.openInventory(gui.getInventory());
+        GuiView view = gui.open(player, inventoryPool);
+        player.openInventory(view.getInventory());
+        refreshScheduler.add(view);
         openGuis.put(player.getUniqueId(), gui);
         gui.onOpen(player);
         
         return true;
     }
     
+    /**
+     * Read the GUI settings from the config again.
+     */
+    public void reloadSettings() {
+        refreshScheduler.stop();
+        refreshScheduler.start();
+    }
+    
+    public void shutdown() {
+        refreshScheduler.stop();
+        closeAllGuis();
+    }
+    
     @Override
     public boolean closeGui(Player player) {
         UUID playerUuid = player.getUniqueId();
         if (openGuis.containsKey(playerUuid)) {
             GuiPage gui = openGuis.get(playerUuid);
             gui.onClose(player);
+            gui.close(player, inventoryPool);
             openGuis.remove(playerUuid);
             return true;
         }
@@ -114,6 +153,7 @@ public class GuiManagerImpl implements GuiManager {
             if (player != null) {
                 player.closeInventory();
                 entry.getValue().onClose(player);
+                entry.getValue().close(player, inventoryPool);
             }
             it.remove();
         }
@@ -147,6 +187,7 @@ public class GuiManagerImpl implements GuiManager {
         closeAllGuis();
         
         registeredGuis.clear();
+        ItemUtils.clearPrototypes();
         loadDefaultGuis();
         
         plugin.getConfigManager().getGuiConfigs().forEach((id, config) -> {
@@ -176,16 +217,27 @@ public class GuiManagerImpl implements GuiManager {
         GuiBuilder builder = createGui(guiId, config.getTitle(), config.getRows());
         
         config.getItems().forEach((slot, itemConfig) -> {
-            ItemStack item = ItemUtils.fromConfig(itemConfig);
+            // Shared with every slot of every GUI that has the same item
+            ItemStack item = ItemUtils.prototype(itemConfig);
             if (itemConfig.hasScript()) {
-                builder.setItem(slot, item, (player, gui) -> {
-                    String script = itemConfig.getScript();
-                    Map<String, Object> vars = new HashMap<>();
-                    vars.put("player", player);
-                    vars.put("gui", gui);
-                    plugin.getScriptManager().executeScript(script, player, vars);
-                    return true;
-                });
+                String script = itemConfig.getScript();
+                ScriptManager scripts = plugin.getScriptManager();
+                // Kept by the click handler instead of looked up in the compile cache on every
+                // click, so the script stays hot however many scripts the GUIs have
+                ScriptHandle handle = scripts instanceof ScriptManagerImpl
+                        ? ((ScriptManagerImpl) scripts).handle(script)
+                        : null;
+                // Compile up front so the first click does not pay for parsing
+                // and broken scripts are reported when the GUI loads
+                CompiledScript compiled = null;
+                try {
+                    compiled = handle != null ? handle.get() : scripts.compile(script);
+                } catch (IllegalArgumentException e) {
+                    plugin.getLogger().warning("Invalid script in GUI " + guiId + " slot " + slot + ": " + e.getMessage());
+                }
+                
+                boolean async = config.isAsyncScripts() && compiled != null;
+                builder.setItem(slot, item, scriptClickHandler(scripts, handle, script, async));
             } else {
                 builder.setItem(slot, item);
             }
@@ -194,6 +246,83 @@ public class GuiManagerImpl implements GuiManager {
         return builder;
     }
     
+    /**
+     * Click handler of an item with a script. The script runs from its handle in a pooled
+     * context that reads the click variables in place, so a click allocates only those.
+     */
+    static BiPredicate<Player, GuiPage> scriptClickHandler(ScriptManager scripts, ScriptHandle handle,
+                                                           String script, boolean async) {
+        return (player, gui) -> {
+            Map<String, Object> vars = new ClickVariables(player, gui);
+            if (handle == null) {
+                if (async) {
+                    scripts.executeAsync(scripts.compile(script), scripts.createContext(player, vars));
+                } else {
+                    scripts.executeScript(script, player, vars);
+                }
+                return true;
+            }
+            
+            CompiledScript current;
+            try {
+                current = handle.get();
+            } catch (IllegalArgumentException e) {
+                return true;
+            }
+            if (async) {
+                scripts.executeAsync(current, scripts.createContext(player, vars));
+            } else {
+                scripts.execute(current, player, vars);
+            }
+            return true;
+        };
+    }
+    
+    /**
+     * The {@code player} and {@code gui} variables of a click, in one small object instead of
+     * a general map.
+     */
+    private static final class ClickVariables extends AbstractMap<String, Object> {
+        
+        private final Player player;
+        private final GuiPage gui;
+        
+        ClickVariables(Player player, GuiPage gui) {
+            this.player = player;
+            this.gui = gui;
+        }
+        
+        @Override
+        public Object get(Object key) {
+            if ("player".equals(key)) {
+                return player;
+            }
+            return "gui".equals(key) ? gui : null;
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+        
+        @Override
+        public int size() {
+            return (player != null ? 1 : 0) + (gui != null ? 1 : 0);
+        }
+        
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Set<Entry<String, Object>> entries = new LinkedHashSet<>();
+            if (player != null) {
+                entries.add(new SimpleImmutableEntry<>("player", player));
+            }
+            if (gui != null) {
+                entries.add(new SimpleImmutableEntry<>("gui", gui));
+            }
+            return Collections.unmodifiableSet(entries);
+        }
+    }
+    
     @Override
     public boolean saveGuiToConfig(GuiPage gui) {
         try {
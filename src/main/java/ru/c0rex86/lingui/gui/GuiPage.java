@@ -5,20 +5,30 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Consumer;
 
+/**
+ * A GUI definition shared by everyone viewing it. Each viewer gets a {@link GuiView} with
+ * an inventory of its own, filled from the page's static items and the viewer's own
+ * rendering of the dynamic ones.
+ */
 public class GuiPage {
     
     private final String id;
     private String title;
     private final int rows;
-    private final Inventory inventory;
     private final Map<Integer, GuiItem> items;
     private final Map<UUID, Map<String, Object>> playerData;
+    private final Map<UUID, GuiView> views;
+    // Rebuilt on first use after the items change
+    private Layer layer;
+    private Inventory inventory;
     private Consumer<Player> openAction;
     private Consumer<Player> closeAction;
     
@@ -26,9 +36,9 @@ public class GuiPage {
         this.id = id;
         this.title = title;
         this.rows = Math.min(6, Math.max(1, rows));
-        this.inventory = Bukkit.createInventory(null, this.rows * 9, title);
         this.items = new HashMap<>();
         this.playerData = new HashMap<>();
+        this.views = new HashMap<>();
     }
     
     public String getId() {
@@ -47,7 +57,18 @@ public class GuiPage {
         return rows;
     }
     
+    /**
+     * An inventory holding only the static items, for code written before each viewer had
+     * an inventory of its own.
+     *
+     * @deprecated Open the page through the GUI manager and use {@link #getView}
+     */
+    @Deprecated
     public Inventory getInventory() {
+        if (inventory == null) {
+            inventory = Bukkit.createInventory(null, rows * 9, title);
+            inventory.setContents(layer().items);
+        }
         return inventory;
     }
     
@@ -58,13 +79,14 @@ public class GuiPage {
     public void setItem(int slot, GuiItem item) {
         if (slot >= 0 && slot < rows * 9) {
             items.put(slot, item);
-            inventory.setItem(slot, item.getItemStack());
+            item.page = this;
+            changed();
         }
     }
     
     public void removeItem(int slot) {
         items.remove(slot);
-        inventory.setItem(slot, null);
+        changed();
     }
     
     public Optional<GuiItem> getItem(int slot) {
@@ -73,7 +95,69 @@ public class GuiPage {
     
     public void clear() {
         items.clear();
-        inventory.clear();
+        changed();
+    }
+    
+    /**
+     * Rebuild the layer after one of the items switched between static and dynamic.
+     */
+    void itemChanged(GuiItem item) {
+        if (items.containsValue(item)) {
+            changed();
+        }
+    }
+    
+    private void changed() {
+        layer = null;
+        if (inventory != null) {
+            inventory.setContents(layer().items);
+        }
+        for (GuiView view : views.values()) {
+            view.render();
+        }
+    }
+    
+    Layer layer() {
+        Layer current = layer;
+        if (current == null) {
+            current = new Layer(rows * 9, items);
+            layer = current;
+        }
+        return current;
+    }
+    
+    /**
+     * Make a view of this page for a player, with its inventory taken from the pool and
+     * fully rendered. Replaces the player's previous view of this page.
+     */
+    GuiView open(Player player, InventoryPool pool) {
+        GuiView previous = views.remove(player.getUniqueId());
+        if (previous != null) {
+            previous.release(pool);
+        }
+        
+        GuiView view = new GuiView(this, player, pool.acquire(rows * 9, title), title);
+        view.render();
+        views.put(player.getUniqueId(), view);
+        return view;
+    }
+    
+    /**
+     * Drop the player's view, returning its inventory to the pool.
+     */
+    void close(Player player, InventoryPool pool) {
+        GuiView view = views.remove(player.getUniqueId());
+        if (view != null) {
+            view.release(pool);
+        }
+    }
+    
+    public Optional<GuiView> getView(UUID playerUuid) {
+        return Optional.ofNullable(views.get(playerUuid));
+    }
+    
+    public Collection<GuiView> getViews() {
+        return Collections.unmodifiableCollection(views.values());
     }
     
     public void setOpenAction(Consumer<Player> openAction) {
@@ -116,12 +200,49 @@ public class GuiPage {
         }).orElse(false);
     }
     
+    /**
+     * Render the dynamic items again for the player's view of this page, if it has one.
+     */
     public void update(Player player) {
-        for (Map.Entry<Integer, GuiItem> entry : items.entrySet()) {
-            GuiItem item = entry.getValue();
-            if (item.isDynamic()) {
-                ItemStack updatedItem = item.getItemStack(player, this);
-                inventory.setItem(entry.getKey(), updatedItem);
+        GuiView view = views.get(player.getUniqueId());
+        if (view != null) {
+            view.renderDynamic();
+        }
+    }
+    
+    /**
+     * What every viewer of the page shares: the static items by slot, with the dynamic
+     * slots left empty, and the dynamic items with their slots in slot order. Never changed
+     * once built.
+     */
+    static final class Layer {
+        final ItemStack[] items;
+        final int[] dynamicSlots;
+        final GuiItem[] dynamicItems;
+        
+        Layer(int size, Map<Integer, GuiItem> source) {
+            this.items = new ItemStack[size];
+            int dynamic = 0;
+            for (GuiItem item : source.values()) {
+                if (item.isDynamic()) {
+                    dynamic++;
+                }
+            }
+            this.dynamicSlots = new int[dynamic];
+            this.dynamicItems = new GuiItem[dynamic];
+            
+            int index = 0;
+            for (int slot = 0; slot < size; slot++) {
+                GuiItem item = source.get(slot);
+                if (item == null) {
+                    continue;
+                }
+                if (item.isDynamic()) {
+                    dynamicSlots[index] = slot;
+                    dynamicItems[index++] = item;
+                } else {
+                    items[slot] = item.getPrototype();
+                }
             }
         }
     }
@@ -0,0 +1,113 @@
+package ru.c0rex86.lingui.gui;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import ru.c0rex86.lingui.LinGUi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Refreshes the dynamic items of open views while {@code gui.auto-update} is on. Every view
+ * is refreshed once per {@code gui.update-interval} ticks, on the tick picked by the hash of
+ * its viewer's UUID, so the views are spread over the interval rather than all rendered on
+ * one tick. Views a tick has no {@code gui.refresh-tick-budget} left for go first on the next.
+ */
+final class GuiRefreshScheduler implements Runnable {
+    
+    private static final long DEFAULT_TICK_BUDGET = 1000;
+    
+    private final LinGUi plugin;
+    private final ArrayDeque<GuiView> overdue;
+    // One list of views per tick of the interval, null while auto-update is off
+    private List<List<GuiView>> buckets;
+    private long budgetNanos;
+    private int tick;
+    // Ticks since start, stamped on refreshed views
+    private long ticks;
+    private BukkitTask task;
+    
+    GuiRefreshScheduler(LinGUi plugin) {
+        this.plugin = plugin;
+        this.overdue = new ArrayDeque<>();
+    }
+    
+    void start() {
+        if (task != null || !plugin.getConfig().getBoolean("gui.auto-update", true)) {
+            return;
+        }
+        
+        int interval = Math.max(1, plugin.getConfig().getInt("gui.update-interval", 20));
+        budgetNanos = Math.max(1, plugin.getConfig().getLong("gui.refresh-tick-budget", DEFAULT_TICK_BUDGET)) * 1000;
+        buckets = new ArrayList<>(interval);
+        for (int i = 0; i < interval; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        tick = 0;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1, 1);
+    }
+    
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        buckets = null;
+        overdue.clear();
+    }
+    
+    /**
+     * Start refreshing a newly opened view. Closed views are dropped on their next turn.
+     */
+    void add(GuiView view) {
+        if (buckets == null) {
+            return;
+        }
+        int bucket = Math.floorMod(view.getViewer().getUniqueId().hashCode(), buckets.size());
+        buckets.get(bucket).add(view);
+    }
+    
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        ticks++;
+        
+        while (!overdue.isEmpty() && System.nanoTime() - start < budgetNanos) {
+            GuiView view = overdue.poll();
+            view.queued = false;
+            if (!view.isClosed()) {
+                refresh(view);
+            }
+        }
+        
+        List<GuiView> bucket = buckets.get(tick);
+        tick = (tick + 1) % buckets.size();
+        for (int i = 0; i < bucket.size(); i++) {
+            GuiView view = bucket.get(i);
+            if (view.isClosed()) {
+                bucket.set(i, bucket.get(bucket.size() - 1));
+                bucket.remove(bucket.size() - 1);
+                i--;
+            } else if (view.refreshedTick == ticks) {
+                // Already refreshed from the overdue queue this tick
+                continue;
+            } else if (System.nanoTime() - start < budgetNanos) {
+                refresh(view);
+            } else if (!view.queued) {
+                view.queued = true;
+                overdue.add(view);
+            }
+        }
+    }
+    
+    private void refresh(GuiView view) {
+        view.refreshedTick = ticks;
+        try {
+            view.refresh();
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to refresh GUI " + view.getPage().getId() + " for "
+                    + view.getViewer().getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package ru.c0rex86.lingui.gui;
+
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+
+/**
+ * One player's view of a {@link GuiPage}. The inventory is the viewer's own, so dynamic
+ * items can differ between players; the static items come from the page's shared layer
+ * and only the dynamic slots are kept here.
+ */
+public class GuiView {
+    
+    private final GuiPage page;
+    private final Player viewer;
+    private final Inventory inventory;
+    private final String title;
+    // Layer the inventory was last rendered from, and the stack, its hash and the inputs it
+    // was rendered from of each of the layer's dynamic slots
+    private GuiPage.Layer rendered;
+    private ItemStack[] dynamicItems;
+    private int[] dynamicHashes;
+    private Object[] inputs;
+    private int renderedSlots;
+    private int sentSlots;
+    private long totalRenderedSlots;
+    private long totalSentSlots;
+    private boolean closed;
+    // Waiting in the refresh scheduler's overdue queue
+    boolean queued;
+    // Scheduler tick of the last refresh, so a view is refreshed at most once per tick
+    long refreshedTick = -1;
+    
+    GuiView(GuiPage page, Player viewer, Inventory inventory, String title) {
+        this.page = page;
+        this.viewer = viewer;
+        this.inventory = inventory;
+        this.title = title;
+    }
+    
+    public GuiPage getPage() {
+        return page;
+    }
+    
+    public Player getViewer() {
+        return viewer;
+    }
+    
+    public Inventory getInventory() {
+        return inventory;
+    }
+    
+    public boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * @return The stack this viewer sees in the slot, without reading the inventory. Static
+     *         items are shared with other views and must not be modified
+     */
+    public ItemStack getItem(int slot) {
+        GuiPage.Layer layer = rendered != null ? rendered : page.layer();
+        if (dynamicItems != null) {
+            for (int i = 0; i < layer.dynamicSlots.length; i++) {
+                if (layer.dynamicSlots[i] == slot) {
+                    return dynamicItems[i];
+                }
+            }
+        }
+        return slot >= 0 && slot < layer.items.length ? layer.items[slot] : null;
+    }
+    
+    /**
+     * @return Slots produced by the last render, whether or not they changed
+     */
+    public int getRenderedSlots() {
+        return renderedSlots;
+    }
+    
+    /**
+     * @return Slots the last render actually wrote to the inventory, each one an update sent
+     *         to the viewer
+     */
+    public int getSentSlots() {
+        return sentSlots;
+    }
+    
+    public long getTotalRenderedSlots() {
+        return totalRenderedSlots;
+    }
+    
+    public long getTotalSentSlots() {
+        return totalSentSlots;
+    }
+    
+    /**
+     * Bring the whole inventory up to date with the page: the shared static items, then
+     * this viewer's dynamic ones. Only slots that differ from what was rendered before are
+     * written.
+     */
+    void render() {
+        GuiPage.Layer layer = page.layer();
+        GuiPage.Layer previous = rendered;
+        renderedSlots = 0;
+        sentSlots = 0;
+        
+        if (previous == null) {
+            // Not shown to the viewer yet, so filling it in one go sends nothing
+            inventory.setContents(layer.items);
+            renderedSlots = layer.items.length - layer.dynamicSlots.length;
+            sentSlots = renderedSlots;
+            totalSentSlots += sentSlots;
+        } else if (previous != layer) {
+            // Layers share the stacks of unchanged static items. Dynamic slots are left to
+            // the dynamic pass
+            for (int slot = 0; slot < layer.items.length; slot++) {
+                ItemStack item = layer.items[slot];
+                if (item != previous.items[slot] && (item != null || Arrays.binarySearch(layer.dynamicSlots, slot) < 0)) {
+                    send(slot, item);
+                }
+            }
+            renderedSlots = layer.items.length - layer.dynamicSlots.length;
+            for (int slot : previous.dynamicSlots) {
+                if (layer.items[slot] == null && Arrays.binarySearch(layer.dynamicSlots, slot) < 0) {
+                    send(slot, null);
+                }
+            }
+            if (!Arrays.equals(previous.dynamicSlots, layer.dynamicSlots)) {
+                dynamicItems = null;
+            }
+        }
+        
+        rendered = layer;
+        renderDynamic(false);
+    }
+    
+    void renderDynamic() {
+        renderedSlots = 0;
+        sentSlots = 0;
+        renderDynamic(false);
+    }
+    
+    /**
+     * Render the dynamic items again, skipping those whose inputs are the same as when they
+     * were last rendered.
+     */
+    void refresh() {
+        renderedSlots = 0;
+        sentSlots = 0;
+        renderDynamic(true);
+    }
+    
+    private void renderDynamic(boolean skipUnchanged) {
+        GuiPage.Layer layer = page.layer();
+        if (layer != rendered) {
+            render();
+            return;
+        }
+        
+        int[] slots = layer.dynamicSlots;
+        boolean fresh = dynamicItems == null;
+        if (fresh) {
+            dynamicItems = new ItemStack[slots.length];
+            dynamicHashes = new int[slots.length];
+            inputs = new Object[slots.length];
+        }
+        for (int i = 0; i < slots.length; i++) {
+            GuiItem source = layer.dynamicItems[i];
+            Object current = source.getInputs(viewer, page);
+            if (skipUnchanged && !fresh && current != null && current.equals(inputs[i])) {
+                continue;
+            }
+            inputs[i] = current;
+            
+            ItemStack item = source.getItemStack(viewer, page);
+            renderedSlots++;
+            ItemStack last = dynamicItems[i];
+            if (!fresh && item == last) {
+                continue;
+            }
+            int hash = item != null ? item.hashCode() : 0;
+            if (!fresh && sameStack(item, last, hash, dynamicHashes[i])) {
+                continue;
+            }
+            dynamicItems[i] = item;
+            dynamicHashes[i] = hash;
+            send(slots[i], item);
+        }
+        totalRenderedSlots += renderedSlots;
+    }
+    
+    /**
+     * Cheap equality of a new stack and the last one sent: type and amount, then the hash,
+     * which covers the meta without copying it.
+     */
+    private static boolean sameStack(ItemStack item, ItemStack last, int hash, int lastHash) {
+        if (item == null || last == null) {
+            return item == last;
+        }
+        return item.getType() == last.getType()
+                && item.getAmount() == last.getAmount()
+                && hash == lastHash;
+    }
+    
+    private void send(int slot, ItemStack item) {
+        inventory.setItem(slot, item);
+        sentSlots++;
+        totalSentSlots++;
+    }
+    
+    void release(InventoryPool pool) {
+        closed = true;
+        rendered = null;
+        dynamicItems = null;
+        dynamicHashes = null;
+        inputs = null;
+        pool.release(inventory, title);
+    }
+}
@@ -0,0 +1,49 @@
+package ru.c0rex86.lingui.gui;
+
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.Inventory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inventories of closed views, kept by size and title for the next view that needs the
+ * same kind. Titles are fixed when an inventory is created, so both have to match.
+ */
+final class InventoryPool {
+    
+    private static final int MAX_PER_KIND = 16;
+    
+    private final Map<String, ArrayDeque<Inventory>> free = new HashMap<>();
+    
+    Inventory acquire(int size, String title) {
+        ArrayDeque<Inventory> inventories = free.get(key(size, title));
+        if (inventories != null) {
+            for (int i = inventories.size(); i > 0; i--) {
+                Inventory inventory = inventories.poll();
+                // Views are released while the close is still in progress
+                if (inventory.getViewers().isEmpty()) {
+                    return inventory;
+                }
+                inventories.add(inventory);
+            }
+        }
+        return Bukkit.createInventory(null, size, title);
+    }
+    
+    void release(Inventory inventory, String title) {
+        ArrayDeque<Inventory> inventories = free.computeIfAbsent(key(inventory.getSize(), title), k -> new ArrayDeque<>());
+        if (inventories.size() < MAX_PER_KIND) {
+            inventories.add(inventory);
+        }
+    }
+    
+    void clear() {
+        free.clear();
+    }
+    
+    private static String key(int size, String title) {
+        return size + ":" + title;
+    }
+}
@@ -8,15 +8,32 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import ru.c0rex86.lingui.config.ItemConfig;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 public class ItemUtils {
     
+    // Items of configs that are equal once normalized, shared by every slot showing them
+    private static final Map<PrototypeKey, ItemStack> PROTOTYPES = new ConcurrentHashMap<>();
+    private static final LongAdder SHARED = new LongAdder();
+    // The same prototypes by identity, so GuiItem can tell them from stacks it must copy
+    private static final Set<ItemStack> PROTOTYPE_STACKS = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>()));
+    // Built on first use, as the registries may not be ready when the class loads
+    private static volatile Map<String, Material> materials;
+    private static volatile Map<String, Enchantment> enchantments;
+    
     public static ItemStack createItem(String material, String name) {
-        Material mat = Material.getMaterial(material.toUpperCase());
+        Material mat = material(material);
         if (mat == null) {
             mat = Material.STONE;
         }
@@ -50,13 +67,10 @@ public class ItemUtils {
         if (glow) {
             ItemMeta meta = item.getItemMeta();
             if (meta != null) {
-                Enchantment enchantment = null;
-                try {
-                    enchantment = Enchantment.getByKey(NamespacedKey.minecraft("durability"));
-                } catch (Exception e) {
-                    if (Enchantment.values().length > 0) {
-                        enchantment = Enchantment.values()[0];
-                    }
+                // Renamed to unbreaking in 1.20.5
+                Enchantment enchantment = enchantment("durability");
+                if (enchantment == null) {
+                    enchantment = enchantment("unbreaking");
                 }
                 
                 if (enchantment != null) {
@@ -129,46 +143,182 @@ public class ItemUtils {
         return config;
     }
     
+    /**
+     * @return A new item built from the config, free to modify
+     */
     public static ItemStack fromConfig(ItemConfig config) {
-        Material material = Material.getMaterial(config.getMaterial());
-        if (material == null) {
-            material = Material.STONE;
+        return prototype(config).clone();
+    }
+    
+    /**
+     * Get the item for a config from the prototype cache. Configs that describe the same
+     * item share one instance, so the returned stack must not be modified; clone it first.
+     */
+    public static ItemStack prototype(ItemConfig config) {
+        PrototypeKey key = new PrototypeKey(config);
+        ItemStack prototype = PROTOTYPES.get(key);
+        if (prototype != null) {
+            SHARED.increment();
+            return prototype;
         }
-        
-        ItemStack item = new ItemStack(material, config.getAmount());
+        return PROTOTYPES.computeIfAbsent(key, ItemUtils::build);
+    }
+    
+    /**
+     * @return The number of distinct items in the prototype cache
+     */
+    public static int getPrototypeCount() {
+        return PROTOTYPES.size();
+    }
+    
+    /**
+     * @return How many times an item was taken from the prototype cache instead of built
+     */
+    public static long getSharedCount() {
+        return SHARED.sum();
+    }
+    
+    /**
+     * Drop the cached prototypes, e.g. when the GUIs are reloaded. Items already handed out
+     * stay as they are.
+     */
+    public static void clearPrototypes() {
+        PROTOTYPES.clear();
+        PROTOTYPE_STACKS.clear();
+        SHARED.reset();
+    }
+    
+    /**
+     * @return Whether the stack is this very instance of a cached prototype
+     */
+    static boolean isPrototype(ItemStack stack) {
+        return PROTOTYPE_STACKS.contains(stack);
+    }
+    
+    private static ItemStack build(PrototypeKey key) {
+        ItemStack item = new ItemStack(key.material, key.amount);
         ItemMeta meta = item.getItemMeta();
         
         if (meta != null) {
-            if (config.getName() != null) {
-                meta.setDisplayName(config.getName());
+            if (key.name != null) {
+                meta.setDisplayName(key.name);
+            }
+            
+            if (key.lore != null) {
+                meta.setLore(key.lore);
             }
             
-            if (config.getLore() != null) {
-                meta.setLore(config.getLore());
+            key.enchants.forEach((enchantment, level) -> meta.addEnchant(enchantment, level, true));
+            key.flags.forEach(meta::addItemFlags);
+            
+            item.setItemMeta(meta);
+        }
+        
+        PROTOTYPE_STACKS.add(item);
+        return item;
+    }
+    
+    /**
+     * Look up a material by name, ignoring case, without going through {@link Material#getMaterial}.
+     */
+    public static Material material(String name) {
+        Map<String, Material> byName = materials;
+        if (byName == null) {
+            byName = new HashMap<>();
+            for (Material material : Material.values()) {
+                // Material.getMaterial does not find legacy names either
+                if (!material.name().startsWith(Material.LEGACY_PREFIX)) {
+                    byName.put(material.name(), material);
+                }
             }
+            materials = byName;
+        }
+        return name != null ? byName.get(name.toUpperCase()) : null;
+    }
+    
+    /**
+     * Look up a vanilla enchantment by key, ignoring case.
+     */
+    public static Enchantment enchantment(String key) {
+        Map<String, Enchantment> byKey = enchantments;
+        if (byKey == null) {
+            byKey = new HashMap<>();
+            for (Enchantment enchantment : Enchantment.values()) {
+                NamespacedKey namespacedKey = enchantment.getKey();
+                if (NamespacedKey.MINECRAFT.equals(namespacedKey.getNamespace())) {
+                    byKey.put(namespacedKey.getKey(), enchantment);
+                }
+            }
+            enchantments = byKey;
+        }
+        return key != null ? byKey.get(key.toLowerCase()) : null;
+    }
+    
+    /**
+     * What an item config comes down to: the material and enchantments resolved, unknown
+     * enchantments and flags dropped, and the order of enchantments and flags ignored.
+     */
+    private static final class PrototypeKey {
+        final Material material;
+        final int amount;
+        final String name;
+        final List<String> lore;
+        final Map<Enchantment, Integer> enchants;
+        final Set<ItemFlag> flags;
+        final int hash;
+        
+        PrototypeKey(ItemConfig config) {
+            Material resolved = material(config.getMaterial());
+            this.material = resolved != null ? resolved : Material.STONE;
+            this.amount = config.getAmount();
+            this.name = config.getName();
+            this.lore = config.getLore() != null ? List.copyOf(config.getLore()) : null;
             
+            Map<Enchantment, Integer> resolvedEnchants = new HashMap<>();
             if (config.getEnchants() != null) {
                 config.getEnchants().forEach((enchantName, level) -> {
-                    Enchantment enchantment = Enchantment.getByKey(NamespacedKey.minecraft(enchantName.toLowerCase()));
+                    Enchantment enchantment = enchantment(enchantName);
                     if (enchantment != null) {
-                        meta.addEnchant(enchantment, level, true);
+                        resolvedEnchants.put(enchantment, level);
                     }
                 });
             }
+            this.enchants = resolvedEnchants;
             
+            Set<ItemFlag> resolvedFlags = EnumSet.noneOf(ItemFlag.class);
             if (config.getFlags() != null) {
-                config.getFlags().forEach(flagName -> {
+                for (String flagName : config.getFlags()) {
                     try {
-                        ItemFlag flag = ItemFlag.valueOf(flagName);
-                        meta.addItemFlags(flag);
+                        resolvedFlags.add(ItemFlag.valueOf(flagName));
                     } catch (IllegalArgumentException ignored) {
                     }
-                });
+                }
             }
-            
-            item.setItemMeta(meta);
+            this.flags = resolvedFlags;
+            this.hash = Objects.hash(material, amount, name, lore, enchants, flags);
         }
         
-        return item;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PrototypeKey)) {
+                return false;
+            }
+            PrototypeKey other = (PrototypeKey) o;
+            return hash == other.hash
+                    && material == other.material
+                    && amount == other.amount
+                    && Objects.equals(name, other.name)
+                    && Objects.equals(lore, other.lore)
+                    && enchants.equals(other.enchants)
+                    && flags.equals(other.flags);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 } 
\ No newline at end of file
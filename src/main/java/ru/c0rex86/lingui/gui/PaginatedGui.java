@@ -0,0 +1,290 @@
+package ru.c0rex86.lingui.gui;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+
+/**
+ * A GUI that lists the entries of a {@link DataProvider} a page at a time. Each viewer holds
+ * only the page they are on and the one next to it in the direction they are going, fetched
+ * ahead of time; the content slots are dynamic items of the viewer's own view, so flipping a
+ * page renders into the same view and memory does not grow with the size of the dataset.
+ *
+ * @param <T> The type of the entries
+ */
+public class PaginatedGui<T> extends GuiPage {
+    
+    private final Plugin plugin;
+    private final DataProvider<T> provider;
+    private final BiFunction<Player, T, ItemStack> renderer;
+    private final Map<UUID, Viewer<T>> viewers;
+    private BiPredicate<Player, T> clickHandler;
+    private int[] contentSlots;
+    private int previousSlot = -1;
+    private ItemStack previousButton;
+    private int nextSlot = -1;
+    private ItemStack nextButton;
+    // Items the last layout placed, by slot, so a new layout leaves the caller's items alone
+    private final Map<Integer, GuiItem> placed = new HashMap<>();
+    
+    /**
+     * Content goes in every slot but the bottom row, which is left for the navigation
+     * buttons; a single row GUI uses all its slots for content.
+     *
+     * @param renderer Makes the item shown for an entry
+     */
+    public PaginatedGui(Plugin plugin, String id, String title, int rows, DataProvider<T> provider,
+                        BiFunction<Player, T, ItemStack> renderer) {
+        super(id, title, rows);
+        this.plugin = plugin;
+        this.provider = provider;
+        this.renderer = renderer;
+        this.viewers = new HashMap<>();
+        
+        int content = getRows() > 1 ? (getRows() - 1) * 9 : 9;
+        this.contentSlots = new int[content];
+        for (int i = 0; i < content; i++) {
+            contentSlots[i] = i;
+        }
+        layout();
+    }
+    
+    public PaginatedGui<T> setContentSlots(int... slots) {
+        this.contentSlots = slots.clone();
+        layout();
+        return this;
+    }
+    
+    /**
+     * Place the buttons that flip pages. Each is hidden while there is no page to go to.
+     */
+    public PaginatedGui<T> setNavigation(int previousSlot, ItemStack previousButton, int nextSlot, ItemStack nextButton) {
+        this.previousSlot = previousSlot;
+        this.previousButton = previousButton;
+        this.nextSlot = nextSlot;
+        this.nextButton = nextButton;
+        layout();
+        return this;
+    }
+    
+    /**
+     * Handle clicks on entries. Returns whether the click was handled, as {@link GuiItem} handlers do.
+     */
+    public PaginatedGui<T> setClickHandler(BiPredicate<Player, T> clickHandler) {
+        this.clickHandler = clickHandler;
+        return this;
+    }
+    
+    public int getPageSize() {
+        return contentSlots.length;
+    }
+    
+    /**
+     * @return The page the player is on, or -1 if they are not viewing this GUI
+     */
+    public int getPage(Player player) {
+        Viewer<T> viewer = viewers.get(player.getUniqueId());
+        return viewer != null ? viewer.page : -1;
+    }
+    
+    public int getPageCount(Player player) {
+        Viewer<T> viewer = viewers.get(player.getUniqueId());
+        return viewer != null ? viewer.pages : 0;
+    }
+    
+    public void nextPage(Player player) {
+        Viewer<T> viewer = viewers.get(player.getUniqueId());
+        if (viewer != null) {
+            setPage(player, viewer.page + 1);
+        }
+    }
+    
+    public void previousPage(Player player) {
+        Viewer<T> viewer = viewers.get(player.getUniqueId());
+        if (viewer != null) {
+            setPage(player, viewer.page - 1);
+        }
+    }
+    
+    /**
+     * Move the player to a page, counted from 0. The view keeps showing the current page
+     * until the new one has been fetched.
+     */
+    public void setPage(Player player, int page) {
+        Viewer<T> viewer = viewers.get(player.getUniqueId());
+        if (viewer != null) {
+            load(player, viewer, page);
+        }
+    }
+    
+    @Override
+    public void onOpen(Player player) {
+        Viewer<T> viewer = new Viewer<>();
+        viewers.put(player.getUniqueId(), viewer);
+        super.onOpen(player);
+        load(player, viewer, 0);
+    }
+    
+    @Override
+    public void onClose(Player player) {
+        super.onClose(player);
+        viewers.remove(player.getUniqueId());
+    }
+    
+    /**
+     * Replace the content and navigation items of the last layout. Items the caller placed
+     * elsewhere, or over one of ours since, stay.
+     */
+    private void layout() {
+        placed.forEach((slot, item) -> {
+            if (getItem(slot).orElse(null) == item) {
+                removeItem(slot);
+            }
+        });
+        placed.clear();
+        
+        for (int i = 0; i < contentSlots.length; i++) {
+            int index = i;
+            GuiItem item = new GuiItem((player, gui) -> renderEntry(player, index),
+                    (player, gui) -> clickEntry(player, index));
+            // An entry that stays the same is not rendered again by the refresh
+            place(contentSlots[i], item.setInputs((player, gui) -> entry(player, index)));
+        }
+        
+        if (previousButton != null) {
+            place(previousSlot, new GuiItem((player, gui) -> hasPage(player, -1) ? previousButton : null, (player, gui) -> {
+                previousPage(player);
+                return true;
+            }));
+        }
+        if (nextButton != null) {
+            place(nextSlot, new GuiItem((player, gui) -> hasPage(player, 1) ? nextButton : null, (player, gui) -> {
+                nextPage(player);
+                return true;
+            }));
+        }
+    }
+    
+    private void place(int slot, GuiItem item) {
+        setItem(slot, item);
+        placed.put(slot, item);
+    }
+    
+    /**
+     * Fetch a page and the current number of entries together. Until the count arrives the
+     * last known one decides which pages exist.
+     */
+    private void load(Player player, Viewer<T> viewer, int page) {
+        int target = Math.max(0, Math.min(page, viewer.pages - 1));
+        int from = viewer.page;
+        
+        CompletableFuture<List<T>> future;
+        if (viewer.prefetchPage == target && viewer.prefetch != null) {
+            future = viewer.prefetch;
+        } else {
+            future = fetch(target);
+        }
+        CompletableFuture<Integer> size = provider.sizeAsync();
+        viewer.prefetchPage = -1;
+        viewer.prefetch = null;
+        viewer.loading = target;
+        CompletableFuture.allOf(future, size).whenComplete((ignored, error) -> onMainThread(() -> {
+            // The player closed the GUI or went on to another page meanwhile
+            if (viewers.get(player.getUniqueId()) != viewer || viewer.loading != target) {
+                return;
+            }
+            viewer.loading = -1;
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                plugin.getLogger().warning("Failed to load page " + (target + 1) + " of GUI " + getId() + ": " + cause.getMessage());
+                return;
+            }
+            
+            viewer.pages = Math.max(1, (size.join() + contentSlots.length - 1) / contentSlots.length);
+            if (target >= viewer.pages) {
+                // Entries were removed meanwhile and the page is gone, go to the new last one
+                load(player, viewer, viewer.pages - 1);
+                return;
+            }
+            
+            viewer.page = target;
+            viewer.entries = future.join();
+            update(player);
+            prefetch(viewer, target < from ? target - 1 : target + 1);
+        }));
+    }
+    
+    private void prefetch(Viewer<T> viewer, int page) {
+        if (page < 0 || page >= viewer.pages) {
+            viewer.prefetchPage = -1;
+            viewer.prefetch = null;
+        } else if (page != viewer.prefetchPage) {
+            viewer.prefetchPage = page;
+            viewer.prefetch = fetch(page);
+        }
+    }
+    
+    private CompletableFuture<List<T>> fetch(int page) {
+        return provider.fetchAsync(page * contentSlots.length, contentSlots.length);
+    }
+    
+    private void onMainThread(Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+    
+    private T entry(Player player, int index) {
+        if (player == null) {
+            return null;
+        }
+        Viewer<T> viewer = viewers.get(player.getUniqueId());
+        return viewer != null && index < viewer.entries.size() ? viewer.entries.get(index) : null;
+    }
+    
+    private ItemStack renderEntry(Player player, int index) {
+        T entry = entry(player, index);
+        return entry != null ? renderer.apply(player, entry) : null;
+    }
+    
+    private boolean clickEntry(Player player, int index) {
+        T entry = entry(player, index);
+        return entry != null && clickHandler != null && clickHandler.test(player, entry);
+    }
+    
+    private boolean hasPage(Player player, int step) {
+        if (player == null) {
+            return false;
+        }
+        Viewer<T> viewer = viewers.get(player.getUniqueId());
+        if (viewer == null) {
+            return false;
+        }
+        int page = viewer.page + step;
+        return page >= 0 && page < viewer.pages;
+    }
+    
+    /**
+     * What one player is looking at: their page, its entries and the page fetched ahead.
+     */
+    private static final class Viewer<T> {
+        int page;
+        int pages = 1;
+        List<T> entries = List.of();
+        int loading = -1;
+        int prefetchPage = -1;
+        CompletableFuture<List<T>> prefetch;
+    }
+}
@@ -6,6 +6,7 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.ItemStack;
 import ru.c0rex86.lingui.LinGUi;
@@ -65,6 +66,11 @@ public class GuiListener implements Listener {
         }
     }
     
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        plugin.getPlayerVariableStore().handleJoin(event.getPlayer().getUniqueId());
+    }
+    
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
@@ -72,5 +78,6 @@ public class GuiListener implements Listener {
         if (plugin.getGuiManager().isGuiOpen(player.getUniqueId())) {
             plugin.getGuiManager().closeGui(player);
         }
+        plugin.getPlayerVariableStore().handleQuit(player.getUniqueId());
     }
 } 
\ No newline at end of file
@@ -0,0 +1,155 @@
+package ru.c0rex86.lingui.script;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The argument list of a function call, split when the script is compiled.
+ * <p>
+ * Arguments are separated by whitespace; double quotes group words into one argument and
+ * {@code \"} or {@code \\} escape inside them. Constant arguments are folded into their
+ * final value once: numbers whose text round-trips become an {@link Integer} or
+ * {@link Double}, anything else stays a String. Only arguments with placeholders are
+ * rendered when the call runs.
+ */
+final class Arguments {
+    
+    static final Arguments NONE = new Arguments(new String[0], new Object[0], new int[0], new Template[0]);
+    
+    private final String[] sources;
+    private final Object[] constants;
+    private final int[] dynamicIndexes;
+    private final Template[] dynamicTemplates;
+    
+    private Arguments(String[] sources, Object[] constants, int[] dynamicIndexes, Template[] dynamicTemplates) {
+        this.sources = sources;
+        this.constants = constants;
+        this.dynamicIndexes = dynamicIndexes;
+        this.dynamicTemplates = dynamicTemplates;
+    }
+    
+    static Arguments parse(String text) {
+        String[] sources = split(text);
+        if (sources.length == 0) {
+            return NONE;
+        }
+        
+        Object[] constants = new Object[sources.length];
+        List<Integer> indexes = new ArrayList<>();
+        List<Template> templates = new ArrayList<>();
+        for (int i = 0; i < sources.length; i++) {
+            Template template = Template.parse(sources[i]);
+            if (template.isConstant()) {
+                constants[i] = fold(sources[i]);
+            } else {
+                indexes.add(i);
+                templates.add(template);
+            }
+        }
+        
+        int[] dynamicIndexes = new int[indexes.size()];
+        for (int i = 0; i < dynamicIndexes.length; i++) {
+            dynamicIndexes[i] = indexes.get(i);
+        }
+        return new Arguments(sources, constants, dynamicIndexes, templates.toArray(new Template[0]));
+    }
+    
+    int size() {
+        return sources.length;
+    }
+    
+    /**
+     * @return The argument texts as written, without quotes
+     */
+    String[] sources() {
+        return sources;
+    }
+    
+    /**
+     * @return A fresh array with the folded constants and the rendered dynamic arguments
+     */
+    Object[] evaluate(ScriptContext context) {
+        Object[] values = constants.clone();
+        for (int i = 0; i < dynamicIndexes.length; i++) {
+            values[dynamicIndexes[i]] = dynamicTemplates[i].render(context);
+        }
+        return values;
+    }
+    
+    /**
+     * Stage these as the arguments of a script function call. Arguments that are a single
+     * variable are copied with their type, without rendering them to text.
+     */
+    void stage(ScriptContext context) {
+        for (int i = 0; i < constants.length; i++) {
+            if (constants[i] != null) {
+                context.stageArgument(i, constants[i]);
+            }
+        }
+        for (int i = 0; i < dynamicIndexes.length; i++) {
+            Template template = dynamicTemplates[i];
+            int slot = template.singleVariableSlot();
+            if (slot >= 0) {
+                context.stageArgument(dynamicIndexes[i], slot);
+            } else {
+                context.stageArgument(dynamicIndexes[i], template.render(context));
+            }
+        }
+    }
+    
+    /**
+     * Numbers are only folded when their text round-trips, so {@code String.valueOf} on a
+     * folded argument gives back exactly what the script said ("007" stays a String).
+     */
+    static Object fold(String text) {
+        double number = Template.toNumberOrNaN(text);
+        if (Double.isNaN(number)) {
+            return text;
+        }
+        
+        int integer = (int) number;
+        if (integer == number && Integer.toString(integer).equals(text)) {
+            return integer;
+        }
+        if (Double.toString(number).equals(text)) {
+            return number;
+        }
+        return text;
+    }
+    
+    static String[] split(String text) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int length = text.length();
+        int i = 0;
+        
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            
+            current.setLength(0);
+            if (c == '"') {
+                i++;
+                while (i < length && text.charAt(i) != '"') {
+                    char next = text.charAt(i);
+                    if (next == '\\' && i + 1 < length && (text.charAt(i + 1) == '"' || text.charAt(i + 1) == '\\')) {
+                        next = text.charAt(++i);
+                    }
+                    current.append(next);
+                    i++;
+                }
+                i++; // closing quote, if any
+            } else {
+                while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                    current.append(text.charAt(i++));
+                }
+            }
+            args.add(current.toString());
+        }
+        
+        return args.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,44 @@
+package ru.c0rex86.lingui.script;
+
+/**
+ * Runtime of script functions, shared by the interpreter and compiled steps. A call is a
+ * jump to the function body plus a call record on the context; the parameters are the
+ * function's only locals and every other variable is shared with the caller.
+ */
+final class Calls {
+    
+    private Calls() {
+    }
+    
+    /**
+     * Stage the arguments of a {@code call}, enter the function and jump to its body.
+     */
+    static void call(Instruction call, ScriptContext.Frame frame, ScriptContext context) {
+        call.arguments.stage(context);
+        context.enterCall(call.parameters, call.arguments.size(), frame, frame.instructionPointer);
+        frame.instructionPointer = call.jump;
+    }
+    
+    /**
+     * Return from the current function, or end the script when not in one. The value goes
+     * to the variable after {@code ->} on the call, if any.
+     *
+     * @param value The returned value, or null for none
+     */
+    static void ret(Template value, ScriptContext.Frame frame, ScriptContext context) {
+        if (!context.isInCall()) {
+            frame.instructionPointer = frame.script.size();
+            return;
+        }
+        
+        if (value != null) {
+            int slot = value.singleVariableSlot();
+            if (slot >= 0) {
+                context.stageArgument(0, slot);
+            } else {
+                context.stageArgument(0, value.render(context));
+            }
+        }
+        frame.instructionPointer = context.exitCall(frame, value != null);
+    }
+}
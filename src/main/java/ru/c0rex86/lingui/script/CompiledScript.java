@@ -0,0 +1,95 @@
+package ru.c0rex86.lingui.script;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pre-parsed form of a script. Instances are produced by {@link ScriptCompiler}
+ * and can be executed any number of times through {@link ru.c0rex86.lingui.api.ScriptManager#execute}.
+ * <p>
+ * Scripts start out interpreted. Once a script has run often enough its {@link Step} form is
+ * built off the main thread and published here; frames pick it up on their next instruction.
+ */
+public final class CompiledScript {
+    
+    private final String source;
+    private final Instruction[] instructions;
+    private final boolean async;
+    private final AtomicInteger invocations;
+    private volatile Step[] steps;
+    private volatile String[] permissions;
+    
+    CompiledScript(String source, Instruction[] instructions, boolean async) {
+        this.source = source;
+        this.instructions = instructions;
+        this.async = async;
+        this.invocations = new AtomicInteger();
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    public int size() {
+        return instructions.length;
+    }
+    
+    /**
+     * @return Whether the script starts with {@code async} and runs off the main thread
+     */
+    public boolean isAsync() {
+        return async;
+    }
+    
+    public int getInvocationCount() {
+        return invocations.get();
+    }
+    
+    /**
+     * @return Whether this script runs as pre-bound steps rather than through the interpreter
+     */
+    public boolean isCompiled() {
+        return steps != null;
+    }
+    
+    Instruction[] instructions() {
+        return instructions;
+    }
+    
+    /**
+     * @return The invocation count including this one
+     */
+    int recordInvocation() {
+        return invocations.incrementAndGet();
+    }
+    
+    /**
+     * @return The permissions the script checks under a fixed name, so a script about to run
+     *         off the main thread can have them looked up first
+     */
+    String[] permissions() {
+        String[] names = permissions;
+        if (names == null) {
+            Set<String> found = new LinkedHashSet<>();
+            for (Instruction instruction : instructions) {
+                if (instruction.opcode == Opcode.PERMISSION) {
+                    found.add(instruction.args[0]);
+                } else if (instruction.condition != null) {
+                    instruction.condition.collectPermissions(found);
+                }
+            }
+            names = found.toArray(new String[0]);
+            permissions = names;
+        }
+        return names;
+    }
+    
+    Step[] steps() {
+        return steps;
+    }
+    
+    void installSteps(Step[] steps) {
+        this.steps = steps;
+    }
+}
@@ -0,0 +1,290 @@
+package ru.c0rex86.lingui.script;
+
+import java.util.Set;
+
+/**
+ * A parsed {@code if} condition. Built once by {@link ConditionParser}; evaluating it does
+ * no parsing and no pattern matching.
+ */
+abstract class Condition {
+    
+    abstract boolean test(ScriptContext context);
+    
+    /**
+     * Add the permissions this condition checks under a fixed name.
+     */
+    void collectPermissions(Set<String> permissions) {
+    }
+    
+    static final class And extends Condition {
+        private final Condition left;
+        private final Condition right;
+        
+        And(Condition left, Condition right) {
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        boolean test(ScriptContext context) {
+            return left.test(context) && right.test(context);
+        }
+        
+        @Override
+        void collectPermissions(Set<String> permissions) {
+            left.collectPermissions(permissions);
+            right.collectPermissions(permissions);
+        }
+    }
+    
+    static final class Or extends Condition {
+        private final Condition left;
+        private final Condition right;
+        
+        Or(Condition left, Condition right) {
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        boolean test(ScriptContext context) {
+            return left.test(context) || right.test(context);
+        }
+        
+        @Override
+        void collectPermissions(Set<String> permissions) {
+            left.collectPermissions(permissions);
+            right.collectPermissions(permissions);
+        }
+    }
+    
+    static final class Not extends Condition {
+        private final Condition condition;
+        
+        Not(Condition condition) {
+            this.condition = condition;
+        }
+        
+        @Override
+        boolean test(ScriptContext context) {
+            return !condition.test(context);
+        }
+        
+        @Override
+        void collectPermissions(Set<String> permissions) {
+            condition.collectPermissions(permissions);
+        }
+    }
+    
+    static final class Permission extends Condition {
+        private final Template permission;
+        
+        Permission(Template permission) {
+            this.permission = permission;
+        }
+        
+        @Override
+        boolean test(ScriptContext context) {
+            return context.hasPermission(permission.render(context));
+        }
+        
+        @Override
+        void collectPermissions(Set<String> permissions) {
+            if (permission.isConstant()) {
+                permissions.add(permission.getSource());
+            }
+        }
+    }
+    
+    /**
+     * A single value used as a condition: true, yes and 1 count as true.
+     */
+    static final class Truthy extends Condition {
+        private final Operand operand;
+        
+        Truthy(Operand operand) {
+            this.operand = operand;
+        }
+        
+        @Override
+        boolean test(ScriptContext context) {
+            double number = operand.number(context);
+            if (!Double.isNaN(number)) {
+                return number == 1;
+            }
+            String text = operand.text(context);
+            return text.equalsIgnoreCase("true") || text.equalsIgnoreCase("yes");
+        }
+    }
+    
+    static final class Compare extends Condition {
+        static final int EQUALS = 0;
+        static final int NOT_EQUALS = 1;
+        static final int GREATER = 2;
+        static final int LESS = 3;
+        static final int GREATER_EQUALS = 4;
+        static final int LESS_EQUALS = 5;
+        
+        private final Operand left;
+        private final int operator;
+        private final Operand right;
+        
+        Compare(Operand left, int operator, Operand right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+        
+        @Override
+        boolean test(ScriptContext context) {
+            if (operator == EQUALS) {
+                return equal(context);
+            } else if (operator == NOT_EQUALS) {
+                return !equal(context);
+            }
+            
+            double l = left.number(context);
+            double r = right.number(context);
+            switch (operator) {
+                case GREATER:
+                    return l > r;
+                case LESS:
+                    return l < r;
+                case GREATER_EQUALS:
+                    return l >= r;
+                default:
+                    return l <= r;
+            }
+        }
+        
+        /**
+         * Numbers compare by value, so 5 equals 5.0. Anything else compares as text, and
+         * {@code null} matches an unset or empty value.
+         */
+        private boolean equal(ScriptContext context) {
+            if (right.isNull()) {
+                return left.isEmpty(context);
+            }
+            if (left.isNull()) {
+                return right.isEmpty(context);
+            }
+            
+            double l = left.number(context);
+            if (!Double.isNaN(l)) {
+                double r = right.number(context);
+                if (!Double.isNaN(r)) {
+                    return l == r;
+                }
+            }
+            return left.text(context).equals(right.text(context));
+        }
+    }
+    
+    /**
+     * One side of a comparison. Literals are typed when parsed, variables read their slot.
+     */
+    abstract static class Operand {
+        
+        abstract double number(ScriptContext context);
+        
+        abstract String text(ScriptContext context);
+        
+        boolean isNull() {
+            return false;
+        }
+        
+        boolean isEmpty(ScriptContext context) {
+            return text(context).isEmpty();
+        }
+    }
+    
+    static final class Literal extends Operand {
+        private final String text;
+        private final double number;
+        
+        Literal(String text) {
+            this.text = text;
+            this.number = Template.toNumberOrNaN(text);
+        }
+        
+        @Override
+        double number(ScriptContext context) {
+            return number;
+        }
+        
+        @Override
+        String text(ScriptContext context) {
+            return text;
+        }
+        
+        @Override
+        boolean isNull() {
+            return text.equals("null");
+        }
+    }
+    
+    static final class Variable extends Operand {
+        private final int slot;
+        
+        Variable(int slot) {
+            this.slot = slot;
+        }
+        
+        @Override
+        double number(ScriptContext context) {
+            return context.getNumberOrNaN(slot);
+        }
+        
+        @Override
+        String text(ScriptContext context) {
+            Object value = context.getVariable(slot);
+            return value != null ? value.toString() : "";
+        }
+        
+        @Override
+        boolean isEmpty(ScriptContext context) {
+            return !context.hasVariable(slot) || text(context).isEmpty();
+        }
+    }
+    
+    static final class Global extends Operand {
+        private final GlobalVariables.Cell cell;
+        
+        Global(GlobalVariables.Cell cell) {
+            this.cell = cell;
+        }
+        
+        @Override
+        double number(ScriptContext context) {
+            return cell.number();
+        }
+        
+        @Override
+        String text(ScriptContext context) {
+            return cell.text();
+        }
+        
+        @Override
+        boolean isEmpty(ScriptContext context) {
+            return text(context).isEmpty();
+        }
+    }
+    
+    static final class Text extends Operand {
+        private final Template template;
+        
+        Text(Template template) {
+            this.template = template;
+        }
+        
+        @Override
+        double number(ScriptContext context) {
+            return Template.toNumberOrNaN(template.render(context));
+        }
+        
+        @Override
+        String text(ScriptContext context) {
+            return template.render(context);
+        }
+    }
+}
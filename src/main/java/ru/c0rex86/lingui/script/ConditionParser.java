@@ -0,0 +1,237 @@
+package ru.c0rex86.lingui.script;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses {@code if} conditions into {@link Condition} trees.
+ * <p>
+ * Supports {@code &&}/{@code and}, {@code ||}/{@code or}, {@code !}/{@code not}, parentheses,
+ * {@code perm: node} and the comparisons {@code == != > < >= <=}. Values are runs of words,
+ * so {@code {name} == John Smith} compares against "John Smith".
+ */
+final class ConditionParser {
+    
+    private final String source;
+    private final List<Token> tokens;
+    private int position;
+    
+    private ConditionParser(String source) {
+        this.source = source;
+        this.tokens = tokenize(source);
+    }
+    
+    static Condition parse(String source) {
+        ConditionParser parser = new ConditionParser(source);
+        if (parser.tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty condition");
+        }
+        
+        Condition condition = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw parser.error("Unexpected '" + parser.tokens.get(parser.position).text + "'");
+        }
+        return condition;
+    }
+    
+    private Condition parseOr() {
+        Condition left = parseAnd();
+        while (accept("||", "or")) {
+            left = new Condition.Or(left, parseAnd());
+        }
+        return left;
+    }
+    
+    private Condition parseAnd() {
+        Condition left = parseUnary();
+        while (accept("&&", "and")) {
+            left = new Condition.And(left, parseUnary());
+        }
+        return left;
+    }
+    
+    private Condition parseUnary() {
+        if (accept("!", "not")) {
+            return new Condition.Not(parseUnary());
+        }
+        
+        if (accept("(", null)) {
+            Condition condition = parseOr();
+            if (!accept(")", null)) {
+                throw error("Missing ')'");
+            }
+            return condition;
+        }
+        
+        return parseComparison();
+    }
+    
+    private Condition parseComparison() {
+        Token token = peek();
+        if (token != null && !token.symbol && token.text.startsWith("perm:")) {
+            position++;
+            String permission = token.text.substring("perm:".length());
+            if (permission.isEmpty()) {
+                Token next = peek();
+                if (next == null || next.symbol) {
+                    throw error("Missing permission after perm:");
+                }
+                permission = next.text;
+                position++;
+            }
+            return new Condition.Permission(Template.parse(permission));
+        }
+        
+        Condition.Operand left = parseOperand();
+        token = peek();
+        if (token == null || !token.symbol) {
+            return new Condition.Truthy(left);
+        }
+        
+        int operator;
+        switch (token.text) {
+            case "==":
+                operator = Condition.Compare.EQUALS;
+                break;
+            case "!=":
+                operator = Condition.Compare.NOT_EQUALS;
+                break;
+            case ">":
+                operator = Condition.Compare.GREATER;
+                break;
+            case "<":
+                operator = Condition.Compare.LESS;
+                break;
+            case ">=":
+                operator = Condition.Compare.GREATER_EQUALS;
+                break;
+            case "<=":
+                operator = Condition.Compare.LESS_EQUALS;
+                break;
+            default:
+                return new Condition.Truthy(left);
+        }
+        position++;
+        
+        return new Condition.Compare(left, operator, parseOperand());
+    }
+    
+    private Condition.Operand parseOperand() {
+        StringBuilder value = new StringBuilder();
+        while (position < tokens.size()) {
+            Token token = tokens.get(position);
+            if (token.symbol || token.text.equalsIgnoreCase("and") || token.text.equalsIgnoreCase("or")) {
+                break;
+            }
+            if (value.length() > 0) {
+                value.append(' ');
+            }
+            value.append(token.text);
+            position++;
+        }
+        
+        if (value.length() == 0) {
+            throw error("Expected a value");
+        }
+        
+        Template template = Template.parse(value.toString());
+        if (template.isConstant()) {
+            return new Condition.Literal(template.getSource());
+        }
+        int slot = template.singleVariableSlot();
+        if (slot >= 0) {
+            return new Condition.Variable(slot);
+        }
+        GlobalVariables.Cell cell = template.singleGlobal();
+        if (cell != null) {
+            return new Condition.Global(cell);
+        }
+        return new Condition.Text(template);
+    }
+    
+    private Token peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+    
+    /**
+     * Consume the next token if it is the given symbol or, ignoring case, the given word.
+     */
+    private boolean accept(String symbol, String word) {
+        Token token = peek();
+        if (token == null) {
+            return false;
+        }
+        if (token.symbol ? token.text.equals(symbol) : token.text.equalsIgnoreCase(word)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+    
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " in condition: " + source);
+    }
+    
+    private static List<Token> tokenize(String text) {
+        List<Token> tokens = new ArrayList<>();
+        int length = text.length();
+        int i = 0;
+        
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            
+            int symbolLength = symbolAt(text, i);
+            if (symbolLength == 0 && c == '!') {
+                symbolLength = 1; // '!' negates only at the start of a token
+            }
+            if (symbolLength > 0) {
+                tokens.add(new Token(text.substring(i, i + symbolLength), true));
+                i += symbolLength;
+                continue;
+            }
+            
+            int start = i;
+            while (i < length) {
+                c = text.charAt(i);
+                if (Character.isWhitespace(c) || symbolAt(text, i) > 0) {
+                    break;
+                }
+                if (c == '{') {
+                    // Placeholders are kept whole, whatever they contain
+                    int close = text.indexOf('}', i + 1);
+                    if (close > i + 1) {
+                        i = close + 1;
+                        continue;
+                    }
+                }
+                i++;
+            }
+            tokens.add(new Token(text.substring(start, i), false));
+        }
+        
+        return tokens;
+    }
+    
+    private static int symbolAt(String text, int index) {
+        if (text.startsWith("&&", index) || text.startsWith("||", index) || text.startsWith("==", index)
+                || text.startsWith("!=", index) || text.startsWith(">=", index) || text.startsWith("<=", index)) {
+            return 2;
+        }
+        char c = text.charAt(index);
+        return c == '(' || c == ')' || c == '>' || c == '<' ? 1 : 0;
+    }
+    
+    private static final class Token {
+        final String text;
+        final boolean symbol;
+        
+        Token(String text, boolean symbol) {
+            this.text = text;
+            this.symbol = symbol;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+/**
+ * The built-in actions that must happen on the server thread. Each one runs right away
+ * when the script is on the main thread, and is queued on the context when the script runs
+ * off it; queued actions report success since their outcome is not known yet.
+ */
+final class Effects {
+    
+    private Effects() {
+    }
+    
+    static boolean command(ScriptContext context, String command) {
+        context.incrementCommandCount();
+        Player player = context.getPlayer();
+        if (context.isBufferingEffects()) {
+            context.effect(() -> player.performCommand(command));
+            return true;
+        }
+        return player.performCommand(command);
+    }
+    
+    static boolean console(ScriptContext context, String command) {
+        context.incrementCommandCount();
+        if (context.isBufferingEffects()) {
+            context.effect(() -> Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command));
+            return true;
+        }
+        return Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+    }
+    
+    static boolean message(ScriptContext context, String message) {
+        context.effect(() -> context.getPlayer().sendMessage(message));
+        return true;
+    }
+    
+    /**
+     * @param targetName The player to open the GUI for, or null for the script's player
+     */
+    static boolean openGui(ScriptContext context, String guiId, String targetName) {
+        if (context.isBufferingEffects()) {
+            context.incrementCommandCount();
+            context.effect(() -> {
+                Player target = targetName != null ? Bukkit.getPlayerExact(targetName) : context.getPlayer();
+                if (target != null) {
+                    context.getPlugin().getGuiManager().openGui(target, guiId);
+                }
+            });
+            return true;
+        }
+        
+        Player target = targetName != null ? Bukkit.getPlayerExact(targetName) : context.getPlayer();
+        if (target == null) {
+            return false;
+        }
+        context.incrementCommandCount();
+        return context.getPlugin().getGuiManager().openGui(target, guiId);
+    }
+    
+    static boolean closeGui(ScriptContext context) {
+        if (context.isBufferingEffects()) {
+            context.effect(() -> context.getPlugin().getGuiManager().closeGui(context.getPlayer()));
+            return true;
+        }
+        return context.getPlugin().getGuiManager().closeGui(context.getPlayer());
+    }
+}
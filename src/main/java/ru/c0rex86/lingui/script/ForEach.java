@@ -0,0 +1,94 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+
+/**
+ * Runtime of {@code foreach}, shared by the interpreter and compiled steps. The items are
+ * taken once when the loop starts, so players joining or lists changing during the loop
+ * do not affect it; players who left in the meantime are skipped.
+ * <p>
+ * The loop is time-sliced: between iterations it checks the tick budget of the context and
+ * pauses until the next tick once it is spent, so a loop over hundreds of players spreads
+ * over several ticks instead of stalling one.
+ */
+final class ForEach {
+    
+    static final String ONLINE = "online";
+    
+    private ForEach() {
+    }
+    
+    /**
+     * Enter the loop and assign the first item.
+     *
+     * @param source The list to iterate, or null for the online players
+     * @return False if there are no items and the body is skipped
+     */
+    static boolean start(ScriptContext.Frame frame, ScriptContext context, Template source, int slot) {
+        frame.pushForEach(items(source, context));
+        context.markIteration();
+        return next(frame, context, slot);
+    }
+    
+    /**
+     * Assign the next item at the end of an iteration, pausing until the next tick first if
+     * the slice is spent.
+     *
+     * @return False once the items are used up and the loop is left
+     */
+    static boolean advance(ScriptContext.Frame frame, ScriptContext context, int slot, long budgetNanos) {
+        if (!next(frame, context, slot)) {
+            return false;
+        }
+        if (context.isSliceSpent(budgetNanos)) {
+            context.yieldSlice();
+        }
+        return true;
+    }
+    
+    private static boolean next(ScriptContext.Frame frame, ScriptContext context, int slot) {
+        while (frame.hasNextItem()) {
+            Object item = frame.nextItem();
+            if (item instanceof Player) {
+                Player player = (Player) item;
+                if (!context.isOnline(player)) {
+                    continue;
+                }
+                item = player.getName();
+            }
+            context.setVariable(slot, item);
+            return true;
+        }
+        frame.popLoop();
+        return false;
+    }
+    
+    /**
+     * A collection or array variable is iterated as is, anything else as comma separated text.
+     */
+    private static Object[] items(Template source, ScriptContext context) {
+        if (source == null) {
+            return context.getOnlinePlayers();
+        }
+        
+        int slot = source.singleVariableSlot();
+        Object value = slot >= 0 ? context.getVariable(slot) : source.render(context);
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).toArray();
+        }
+        if (value instanceof Object[]) {
+            return ((Object[]) value).clone();
+        }
+        if (value == null) {
+            return new Object[0];
+        }
+        
+        String text = value.toString().trim();
+        if (text.isEmpty()) {
+            return new Object[0];
+        }
+        return text.split("\\s*,\\s*");
+    }
+}
@@ -0,0 +1,41 @@
+package ru.c0rex86.lingui.script;
+
+/**
+ * How far a running {@code foreach} has got, from {@link ScriptContext#getForEachProgress()}.
+ */
+public final class ForEachProgress {
+    
+    private final int completed;
+    private final int total;
+    
+    ForEachProgress(int completed, int total) {
+        this.completed = completed;
+        this.total = total;
+    }
+    
+    /**
+     * @return Items the loop body has finished with
+     */
+    public int getCompleted() {
+        return completed;
+    }
+    
+    /**
+     * @return Items the loop was started with, including players that have left since
+     */
+    public int getTotal() {
+        return total;
+    }
+    
+    /**
+     * @return The completed share, from 0 to 1
+     */
+    public double getFraction() {
+        return total > 0 ? (double) completed / total : 1;
+    }
+    
+    @Override
+    public String toString() {
+        return completed + "/" + total;
+    }
+}
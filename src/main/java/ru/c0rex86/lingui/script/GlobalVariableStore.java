@@ -0,0 +1,101 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import ru.c0rex86.lingui.LinGUi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Saves {@link GlobalVariables} to {@code data/globals.properties} when
+ * {@code global-variables.persist} is on. Changes are written by an async task at most once
+ * per save interval, and once more synchronously on shutdown.
+ */
+public class GlobalVariableStore {
+    
+    private static final int DEFAULT_SAVE_INTERVAL = 200;
+    
+    private final LinGUi plugin;
+    private final File file;
+    private final Object ioLock;
+    private BukkitTask saveTask;
+    
+    public GlobalVariableStore(LinGUi plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), "data/globals.properties");
+        this.ioLock = new Object();
+    }
+    
+    public void start() {
+        if (!plugin.getConfig().getBoolean("global-variables.persist", false)) {
+            return;
+        }
+        
+        load();
+        long interval = Math.max(1, plugin.getConfig().getLong("global-variables.save-interval", DEFAULT_SAVE_INTERVAL));
+        saveTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::save, interval, interval);
+    }
+    
+    public void shutdown() {
+        if (saveTask != null) {
+            saveTask.cancel();
+            saveTask = null;
+            save();
+        }
+    }
+    
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not read global variables: " + e.getMessage());
+            return;
+        }
+        properties.forEach((name, value) -> GlobalVariables.set(name.toString(), value.toString()));
+        GlobalVariables.takeDirty();
+    }
+    
+    /**
+     * Write all global variables if any changed since the last save. The file is written
+     * next to the old one and moved over it.
+     */
+    public void save() {
+        if (!GlobalVariables.takeDirty()) {
+            return;
+        }
+        
+        Properties properties = new Properties();
+        for (Map.Entry<String, Object> entry : GlobalVariables.snapshot().entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        
+        synchronized (ioLock) {
+            Path path = file.toPath();
+            Path temp = path.resolveSibling(file.getName() + ".tmp");
+            try {
+                Files.createDirectories(path.getParent());
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    properties.store(writer, "LinGUi global variables");
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Could not save global variables: " + e.getMessage());
+                GlobalVariables.markDirty();
+            }
+        }
+    }
+}
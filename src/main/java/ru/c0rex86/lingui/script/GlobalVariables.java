@@ -0,0 +1,201 @@
+package ru.c0rex86.lingui.script;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Variables shared by every script on the server, written as {@code global.name}. Each
+ * variable is a cell bound into compiled scripts, so reading one is a single volatile read
+ * and updates are compare-and-set loops; nothing here takes a lock.
+ */
+public final class GlobalVariables {
+    
+    static final String PREFIX = "global.";
+    
+    private static final Map<String, Cell> CELLS = new ConcurrentHashMap<>();
+    private static volatile boolean dirty;
+    
+    private GlobalVariables() {
+    }
+    
+    /**
+     * One global variable. Values are kept as they were set, numbers as doubles after math.
+     */
+    static final class Cell {
+        private final AtomicReference<Object> value = new AtomicReference<>();
+        
+        Object get() {
+            return value.get();
+        }
+        
+        void set(Object update) {
+            value.set(update);
+            dirty = true;
+        }
+        
+        /**
+         * @return The value as a number, or NaN if it is unset or not numeric
+         */
+        double number() {
+            return toNumber(value.get());
+        }
+        
+        String text() {
+            Object current = value.get();
+            return current != null ? current.toString() : "";
+        }
+        
+        void appendTo(StringBuilder target) {
+            Object current = value.get();
+            if (current != null) {
+                target.append(current);
+            }
+        }
+        
+        /**
+         * Apply {@code + - * /} atomically. An unset variable counts as 0.
+         *
+         * @return The new value
+         * @throws NumberFormatException If the current value is not numeric
+         */
+        double apply(char operator, double operand) {
+            while (true) {
+                Object current = value.get();
+                double base = current == null ? 0 : toNumber(current);
+                if (Double.isNaN(base)) {
+                    throw new NumberFormatException("For input string: \"" + current + "\"");
+                }
+                
+                double result;
+                switch (operator) {
+                    case '+':
+                        result = base + operand;
+                        break;
+                    case '-':
+                        result = base - operand;
+                        break;
+                    case '*':
+                        result = base * operand;
+                        break;
+                    case '/':
+                        if (operand == 0) {
+                            throw new ArithmeticException("Division by zero");
+                        }
+                        result = base / operand;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown operator: " + operator);
+                }
+                
+                if (value.compareAndSet(current, result)) {
+                    dirty = true;
+                    return result;
+                }
+            }
+        }
+        
+        /**
+         * Replace the value if it currently equals {@code expected}, compared as numbers when
+         * both are numeric and as text otherwise.
+         */
+        boolean compareAndSet(Object expected, Object update) {
+            while (true) {
+                Object current = value.get();
+                if (!matches(current, expected)) {
+                    return false;
+                }
+                if (value.compareAndSet(current, update)) {
+                    dirty = true;
+                    return true;
+                }
+            }
+        }
+        
+        private static boolean matches(Object current, Object expected) {
+            double left = toNumber(current);
+            double right = toNumber(expected);
+            if (!Double.isNaN(left) && !Double.isNaN(right)) {
+                return left == right;
+            }
+            String text = current != null ? current.toString() : "";
+            return text.equals(expected != null ? expected.toString() : "");
+        }
+    }
+    
+    static boolean isGlobal(String name) {
+        return name.startsWith(PREFIX) && name.length() > PREFIX.length();
+    }
+    
+    /**
+     * @param name The variable name including the {@code global.} prefix
+     */
+    static Cell cell(String name) {
+        String key = name.substring(PREFIX.length());
+        Cell cell = CELLS.get(key);
+        return cell != null ? cell : CELLS.computeIfAbsent(key, k -> new Cell());
+    }
+    
+    /**
+     * @param name The name without the {@code global.} prefix
+     * @return The value, or null if the variable is not set
+     */
+    public static Object get(String name) {
+        Cell cell = CELLS.get(name);
+        return cell != null ? cell.get() : null;
+    }
+    
+    public static void set(String name, Object value) {
+        cell(PREFIX + name).set(value);
+    }
+    
+    /**
+     * Add to a numeric variable atomically.
+     *
+     * @return The new value
+     */
+    public static double add(String name, double delta) {
+        return cell(PREFIX + name).apply('+', delta);
+    }
+    
+    public static boolean compareAndSet(String name, Object expected, Object update) {
+        return cell(PREFIX + name).compareAndSet(expected, update);
+    }
+    
+    /**
+     * @return The set variables by name, without the prefix, sorted
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> values = new TreeMap<>();
+        CELLS.forEach((name, cell) -> {
+            Object value = cell.get();
+            if (value != null) {
+                values.put(name, value);
+            }
+        });
+        return values;
+    }
+    
+    /**
+     * @return Whether any variable changed since the last call
+     */
+    static boolean takeDirty() {
+        if (!dirty) {
+            return false;
+        }
+        dirty = false;
+        return true;
+    }
+    
+    static void markDirty() {
+        dirty = true;
+    }
+    
+    private static double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value != null ? Template.toNumberOrNaN(value.toString().trim()) : Double.NaN;
+    }
+}
@@ -0,0 +1,126 @@
+package ru.c0rex86.lingui.script;
+
+import ru.c0rex86.lingui.api.ScriptManager.ScriptFunction;
+
+/**
+ * A single compiled script line. Arguments are split once at compile time and every
+ * argument that takes placeholders gets a matching {@link Template} at the same index.
+ * Control flow instructions carry the index they jump to, and {@code if} lines their
+ * parsed {@link Condition}. Variables are bound to their slot, or for {@code global.}
+ * names to their {@link GlobalVariables} cell. Function definitions and calls carry the
+ * parameter slots of the function.
+ */
+final class Instruction {
+    
+    final Opcode opcode;
+    final int line;
+    final String text;
+    final String[] args;
+    final Template[] templates;
+    final String functionName;
+    final ScriptFunction function;
+    final int jump;
+    final int slot;
+    final Condition condition;
+    final ScriptLibrary.Entry include;
+    final Arguments arguments;
+    final TypedCall call;
+    final GlobalVariables.Cell global;
+    final int[] parameters;
+    
+    Instruction(Opcode opcode, int line, String text, String... args) {
+        this(opcode, line, text, args, null, null, null);
+    }
+    
+    Instruction(Opcode opcode, int line, String text, String[] args, Template[] templates) {
+        this(opcode, line, text, args, templates, null, null);
+    }
+    
+    Instruction(Opcode opcode, int line, String text, String[] args, Template[] templates,
+                String functionName, ScriptFunction function) {
+        this(opcode, line, text, args, templates, functionName, function, -1, -1, null, null, null, null, null, null);
+    }
+    
+    /**
+     * A function call with its arguments parsed and folded.
+     */
+    Instruction(Opcode opcode, int line, String text, Arguments arguments, String functionName, ScriptFunction function) {
+        this(opcode, line, text, arguments.sources(), null, functionName, function, -1, -1, null, null, arguments, null, null, null);
+    }
+    
+    private Instruction(Opcode opcode, int line, String text, String[] args, Template[] templates,
+                        String functionName, ScriptFunction function, int jump, int slot, Condition condition,
+                        ScriptLibrary.Entry include, Arguments arguments, TypedCall call,
+                        GlobalVariables.Cell global, int[] parameters) {
+        this.opcode = opcode;
+        this.line = line;
+        this.text = text;
+        this.args = args;
+        this.templates = templates;
+        this.functionName = functionName;
+        this.function = function;
+        this.jump = jump;
+        this.slot = slot;
+        this.condition = condition;
+        this.include = include;
+        this.arguments = arguments;
+        this.call = call;
+        this.global = global;
+        this.parameters = parameters;
+    }
+    
+    Instruction withOpcode(Opcode opcode) {
+        return new Instruction(opcode, line, text, args, templates, functionName, function, jump, slot, condition, include, arguments, call, global, parameters);
+    }
+    
+    Instruction withJump(int jump) {
+        return new Instruction(opcode, line, text, args, templates, functionName, function, jump, slot, condition, include, arguments, call, global, parameters);
+    }
+    
+    /**
+     * @param slot The variable slot this instruction writes to
+     */
+    Instruction withSlot(int slot) {
+        return new Instruction(opcode, line, text, args, templates, functionName, function, jump, slot, condition, include, arguments, call, global, parameters);
+    }
+    
+    Instruction withCondition(Condition condition) {
+        return new Instruction(opcode, line, text, args, templates, functionName, function, jump, slot, condition, include, arguments, call, global, parameters);
+    }
+    
+    /**
+     * @param include The library entry an include with a fixed name is bound to
+     */
+    Instruction withInclude(ScriptLibrary.Entry include) {
+        return new Instruction(opcode, line, text, args, templates, functionName, function, jump, slot, condition, include, arguments, call, global, parameters);
+    }
+    
+    /**
+     * @param call The bound call of a typed function
+     */
+    Instruction withCall(TypedCall call) {
+        return new Instruction(Opcode.TYPED_FUNCTION, line, text, args, templates, functionName, function, jump, slot,
+                condition, include, arguments, call, global, parameters);
+    }
+    
+    /**
+     * @param global The global variable this instruction writes to
+     */
+    Instruction withGlobal(GlobalVariables.Cell global) {
+        return new Instruction(opcode, line, text, args, templates, functionName, function, jump, slot, condition,
+                include, arguments, call, global, parameters);
+    }
+    
+    /**
+     * @param parameters The parameter slots of the function this instruction defines or calls
+     */
+    Instruction withParameters(int[] parameters) {
+        return new Instruction(opcode, line, text, args, templates, functionName, function, jump, slot, condition,
+                include, arguments, call, global, parameters);
+    }
+    
+    @Override
+    public String toString() {
+        return line + ": " + opcode + " " + text;
+    }
+}
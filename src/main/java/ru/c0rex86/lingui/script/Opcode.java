@@ -0,0 +1,38 @@
+package ru.c0rex86.lingui.script;
+
+/**
+ * Operation codes of compiled script instructions. ELIF, ELSE and ENDIF only exist
+ * while a script is being compiled; block matching turns them into IF and JUMP.
+ * FUNC jumps over the function body, which only runs through CALL.
+ */
+enum Opcode {
+    IF,
+    ELIF,
+    ELSE,
+    ENDIF,
+    JUMP,
+    LOOP,
+    ENDLOOP,
+    BREAK,
+    CONTINUE,
+    FOREACH,
+    ENDFOREACH,
+    FUNC,
+    ENDFUNC,
+    CALL,
+    RETURN,
+    COMMAND,
+    OPEN_GUI,
+    CLOSE_GUI,
+    MESSAGE,
+    CONSOLE,
+    PERMISSION,
+    SET,
+    MATH,
+    GLOBAL_SET,
+    GLOBAL_MATH,
+    INCLUDE,
+    FUNCTION,
+    TYPED_FUNCTION,
+    UNKNOWN
+}
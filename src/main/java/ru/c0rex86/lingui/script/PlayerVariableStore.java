@@ -0,0 +1,401 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import ru.c0rex86.lingui.LinGUi;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Script variables that outlive a script run, saved per player with {@code persist} and read
+ * back with {@code load}.
+ * <p>
+ * Online players are kept in memory; players who left are dropped once
+ * {@code player-data-expiry} has passed, or earlier when the cache is full. On disk every
+ * player has an append-only log of changes under {@code data/players}. Writes are coalesced
+ * in memory and appended by an async task, which also rewrites logs that have grown much
+ * longer than their contents.
+ * <p>
+ * Logs are only ever read by async tasks. A player who is not in memory yet is loaded in
+ * the background, and {@link #isLoaded} tells scripts when to wait for it.
+ */
+public class PlayerVariableStore {
+    
+    private static final int DEFAULT_EXPIRY = 300;
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+    private static final int DEFAULT_FLUSH_INTERVAL = 100;
+    private static final int COMPACT_MIN_RECORDS = 64;
+    private static final int IO_LOCKS = 64;
+    // Marks a pending removal, since the pending maps cannot hold null
+    private static final String REMOVED = new String("");
+    
+    private final LinGUi plugin;
+    private final File folder;
+    private final long expiryMillis;
+    private final Map<UUID, PlayerData> cache;
+    private final Map<UUID, Map<String, String>> pendingWrites;
+    // Players between join and quit, so entries made off the main thread know whom to pin
+    private final Set<UUID> online;
+    // Striped by player, so reading one log never waits for a flush of everyone else's
+    private final Object[] ioLocks;
+    private BukkitTask flushTask;
+    
+    public PlayerVariableStore(LinGUi plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "data/players");
+        this.expiryMillis = plugin.getConfig().getLong("player-data-expiry", DEFAULT_EXPIRY) * 1000;
+        this.pendingWrites = new ConcurrentHashMap<>();
+        this.online = ConcurrentHashMap.newKeySet();
+        this.ioLocks = new Object[IO_LOCKS];
+        for (int i = 0; i < IO_LOCKS; i++) {
+            ioLocks[i] = new Object();
+        }
+        
+        int cacheSize = plugin.getConfig().getInt("player-data-cache-size", DEFAULT_CACHE_SIZE);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, PlayerData> eldest) {
+                if (size() > cacheSize) {
+                    // Online players are pinned, evict the least recently used player who left
+                    Iterator<PlayerData> iterator = values().iterator();
+                    while (iterator.hasNext()) {
+                        if (iterator.next().expiresAt != 0) {
+                            iterator.remove();
+                            break;
+                        }
+                    }
+                }
+                return false;
+            }
+        };
+    }
+    
+    private static final class PlayerData {
+        final Map<String, String> values = new ConcurrentHashMap<>();
+        // Names changed before the log was read, which the log must not overwrite; null once loaded
+        Set<String> changedBeforeLoad = new HashSet<>();
+        volatile boolean loaded;
+        // Records in the log file, used to decide when to compact it
+        int records;
+        // When the player left, or the entry was made for an offline player, plus the
+        // expiry; 0 while online
+        volatile long expiresAt;
+        
+        PlayerData(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+        
+        synchronized void change(String name, String value) {
+            if (changedBeforeLoad != null) {
+                changedBeforeLoad.add(name);
+            }
+            apply(values, name, value);
+        }
+        
+        synchronized void finishLoad(Map<String, String> stored) {
+            stored.forEach((name, value) -> {
+                if (!changedBeforeLoad.contains(name)) {
+                    apply(values, name, value);
+                }
+            });
+            changedBeforeLoad = null;
+            loaded = true;
+        }
+    }
+    
+    public void start() {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            handleJoin(player.getUniqueId());
+        }
+        
+        long interval = Math.max(1, plugin.getConfig().getLong("player-data-flush-interval", DEFAULT_FLUSH_INTERVAL));
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flush, interval, interval);
+    }
+    
+    /**
+     * Stop the background task and write everything still pending. Called from onDisable,
+     * when the server no longer ticks, so this is the one place that writes synchronously.
+     */
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush();
+    }
+    
+    /**
+     * Whether the player's variables are in memory. If not, they start loading in the
+     * background and callers of {@link #get} should wait a tick and ask again.
+     */
+    public boolean isLoaded(UUID playerId) {
+        return data(playerId).loaded;
+    }
+    
+    /**
+     * @return The saved value, or null if the player has none under that name or is not
+     *         {@linkplain #isLoaded loaded} yet
+     */
+    public String get(UUID playerId, String name) {
+        return data(playerId).values.get(name);
+    }
+    
+    /**
+     * Save a value. This does not need the player to be loaded; the value wins over the one
+     * in the log.
+     */
+    public void set(UUID playerId, String name, String value) {
+        data(playerId).change(name, value);
+        queue(playerId, name, value);
+    }
+    
+    public void remove(UUID playerId, String name) {
+        PlayerData data = data(playerId);
+        if (data.loaded && !data.values.containsKey(name)) {
+            return;
+        }
+        data.change(name, REMOVED);
+        queue(playerId, name, REMOVED);
+    }
+    
+    /**
+     * Coalesce a write with earlier unflushed writes of the same player. Done inside compute
+     * so a flush that takes the player's map never misses a value put into it.
+     */
+    private void queue(UUID playerId, String name, String value) {
+        pendingWrites.compute(playerId, (id, changes) -> {
+            if (changes == null) {
+                changes = new HashMap<>();
+            }
+            changes.put(name, value);
+            return changes;
+        });
+    }
+    
+    /**
+     * Pin a joining player in memory and read their variables in the background so scripts
+     * find them there.
+     */
+    public void handleJoin(UUID playerId) {
+        online.add(playerId);
+        data(playerId).expiresAt = 0;
+    }
+    
+    /**
+     * Start the expiry of a player who left and write their changes in the background.
+     */
+    public void handleQuit(UUID playerId) {
+        online.remove(playerId);
+        PlayerData data = cached(playerId);
+        if (data != null) {
+            data.expiresAt = System.currentTimeMillis() + expiryMillis;
+        }
+        if (pendingWrites.containsKey(playerId)) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, this::flush);
+        }
+    }
+    
+    /**
+     * Append all pending writes to the player logs, compact logs that need it and drop
+     * expired players from memory.
+     */
+    public void flush() {
+        for (UUID playerId : pendingWrites.keySet()) {
+            synchronized (ioLock(playerId)) {
+                Map<String, String> changes = pendingWrites.remove(playerId);
+                if (changes != null) {
+                    write(playerId, changes);
+                }
+            }
+        }
+        
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            cache.values().removeIf(data -> data.expiresAt != 0 && data.expiresAt <= now);
+        }
+    }
+    
+    private PlayerData cached(UUID playerId) {
+        synchronized (cache) {
+            return cache.get(playerId);
+        }
+    }
+    
+    /**
+     * The player's variables in memory. A player who is not there yet gets an empty entry at
+     * once, which an async task fills from the log, so this never touches the disk. Entries
+     * of players who are not online expire like those of players who left.
+     */
+    private PlayerData data(UUID playerId) {
+        PlayerData data;
+        synchronized (cache) {
+            data = cache.get(playerId);
+            if (data != null) {
+                return data;
+            }
+            data = new PlayerData(online.contains(playerId) ? 0 : System.currentTimeMillis() + expiryMillis);
+            cache.put(playerId, data);
+        }
+        
+        PlayerData loading = data;
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> load(playerId, loading));
+        return data;
+    }
+    
+    private void load(UUID playerId, PlayerData data) {
+        Map<String, String> stored = new HashMap<>();
+        synchronized (ioLock(playerId)) {
+            data.records = read(playerId, stored);
+            // Changes that were made before an eviction and are not on disk yet
+            pendingWrites.computeIfPresent(playerId, (id, changes) -> {
+                changes.forEach((name, value) -> apply(stored, name, value));
+                return changes;
+            });
+        }
+        data.finishLoad(stored);
+    }
+    
+    private Object ioLock(UUID playerId) {
+        return ioLocks[Math.floorMod(playerId.hashCode(), IO_LOCKS)];
+    }
+    
+    private File file(UUID playerId) {
+        return new File(folder, playerId + ".log");
+    }
+    
+    /**
+     * @return The number of records in the log
+     */
+    private int read(UUID playerId, Map<String, String> values) {
+        File file = file(playerId);
+        if (!file.exists()) {
+            return 0;
+        }
+        
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                // set<TAB>name<TAB>value or del<TAB>name, anything else is a torn write
+                int separator = line.indexOf('\t', 4);
+                if (line.startsWith("set\t") && separator > 0) {
+                    values.put(line.substring(4, separator), unescape(line.substring(separator + 1)));
+                } else if (line.startsWith("del\t")) {
+                    values.remove(line.substring(4));
+                }
+            }
+            return lines.size();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not read player data " + file.getName() + ": " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    private void write(UUID playerId, Map<String, String> changes) {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        
+        Path path = file(playerId).toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                writeRecord(writer, change.getKey(), change.getValue());
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not save player data " + path.getFileName() + ": " + e.getMessage());
+            return;
+        }
+        
+        PlayerData data = cached(playerId);
+        // Until the log is read the values in memory are incomplete and must not replace it
+        if (data != null && data.loaded) {
+            data.records += changes.size();
+            if (data.records >= COMPACT_MIN_RECORDS && data.records > data.values.size() * 2) {
+                compact(path, data);
+            }
+        }
+    }
+    
+    /**
+     * Replace a log with one record per live variable. The new log is written next to the
+     * old one and moved over it, so a crash leaves either the old or the new file.
+     */
+    private void compact(Path path, PlayerData data) {
+        Map<String, String> snapshot = new HashMap<>(data.values);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> value : snapshot.entrySet()) {
+                    writeRecord(writer, value.getKey(), value.getValue());
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            data.records = snapshot.size();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not compact player data " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+    
+    private static void writeRecord(BufferedWriter writer, String name, String value) throws IOException {
+        if (value == REMOVED) {
+            writer.write("del\t" + name);
+        } else {
+            writer.write("set\t" + name + "\t" + escape(value));
+        }
+        writer.newLine();
+    }
+    
+    private static void apply(Map<String, String> values, String name, String value) {
+        if (value == REMOVED) {
+            values.remove(name);
+        } else {
+            values.put(name, value);
+        }
+    }
+    
+    private static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+    
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
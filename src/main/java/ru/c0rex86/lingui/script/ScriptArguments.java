@@ -0,0 +1,146 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.FireworkEffect;
+import org.bukkit.Material;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+
+/**
+ * Arguments of a typed script function call, already converted to the types of its
+ * {@link ru.c0rex86.lingui.api.ScriptSignature}. Numbers are kept unboxed. Instances are
+ * reused from call to call, so a function must not keep a reference after it returns.
+ */
+public final class ScriptArguments {
+    
+    private long[] primitives;
+    private Object[] references;
+    private int size;
+    
+    ScriptArguments() {
+        this.primitives = new long[4];
+        this.references = new Object[4];
+    }
+    
+    /**
+     * @return The number of arguments given, which can be less than the signature's arity
+     */
+    public int size() {
+        return size;
+    }
+    
+    public boolean has(int index) {
+        return index < size;
+    }
+    
+    public int getInt(int index) {
+        return (int) primitive(index);
+    }
+    
+    public int getInt(int index, int defaultValue) {
+        return index < size ? (int) primitives[index] : defaultValue;
+    }
+    
+    public double getDouble(int index) {
+        return Double.longBitsToDouble(primitive(index));
+    }
+    
+    public double getDouble(int index, double defaultValue) {
+        return index < size ? Double.longBitsToDouble(primitives[index]) : defaultValue;
+    }
+    
+    public String getString(int index) {
+        return (String) reference(index);
+    }
+    
+    public String getString(int index, String defaultValue) {
+        return index < size ? (String) references[index] : defaultValue;
+    }
+    
+    /**
+     * @return The player, or null if no player with that name is online
+     */
+    public Player getPlayer(int index) {
+        return (Player) reference(index);
+    }
+    
+    public Material getMaterial(int index) {
+        return (Material) reference(index);
+    }
+    
+    public Sound getSound(int index) {
+        return (Sound) reference(index);
+    }
+    
+    public Particle getParticle(int index) {
+        return (Particle) reference(index);
+    }
+    
+    public FireworkEffect.Type getFireworkType(int index, FireworkEffect.Type defaultValue) {
+        return index < size ? (FireworkEffect.Type) references[index] : defaultValue;
+    }
+    
+    /**
+     * @return A copy that stays valid after the call returns
+     */
+    ScriptArguments copy() {
+        ScriptArguments copy = new ScriptArguments();
+        copy.primitives = Arrays.copyOf(primitives, Math.max(size, 1));
+        copy.references = Arrays.copyOf(references, Math.max(size, 1));
+        copy.size = size;
+        return copy;
+    }
+    
+    void reset(int size) {
+        if (size > primitives.length) {
+            primitives = new long[size];
+            references = new Object[size];
+        } else {
+            Arrays.fill(references, 0, this.size, null);
+        }
+        this.size = size;
+    }
+    
+    void setInt(int index, int value) {
+        primitives[index] = value;
+    }
+    
+    void setDouble(int index, double value) {
+        primitives[index] = Double.doubleToRawLongBits(value);
+    }
+    
+    void setReference(int index, Object value) {
+        references[index] = value;
+    }
+    
+    void setRaw(int index, long primitive, Object reference) {
+        primitives[index] = primitive;
+        references[index] = reference;
+    }
+    
+    long primitiveAt(int index) {
+        return primitives[index];
+    }
+    
+    Object referenceAt(int index) {
+        return references[index];
+    }
+    
+    private long primitive(int index) {
+        checkIndex(index);
+        return primitives[index];
+    }
+    
+    private Object reference(int index) {
+        checkIndex(index);
+        return references[index];
+    }
+    
+    private void checkIndex(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Argument " + (index + 1) + " was not given");
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package ru.c0rex86.lingui.script;
+
+import ru.c0rex86.lingui.api.ScriptManager.ScriptFunction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Turns script source into a {@link CompiledScript}. Each line is lexed once: the leading
+ * keyword is read and dispatched straight to its parser, so no line pays for the commands
+ * that happen to be checked before it. Blocks are then matched and every if, elif, else,
+ * loop, foreach, break and continue gets the index it jumps to, and every call the body
+ * of its function.
+ */
+public class ScriptCompiler {
+    
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    private static final String[] NO_ARGS = new String[0];
+    
+    private final Map<String, ScriptFunction> functions;
+    private ScriptLibrary library;
+    
+    public ScriptCompiler(Map<String, ScriptFunction> functions) {
+        this.functions = functions;
+    }
+    
+    /**
+     * Bind includes with a fixed name to this library when compiling.
+     */
+    void setLibrary(ScriptLibrary library) {
+        this.library = library;
+    }
+    
+    public CompiledScript compile(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Script content cannot be null");
+        }
+        
+        String[] lines = source.split("\n");
+        List<Instruction> instructions = new ArrayList<>(lines.length);
+        boolean async = false;
+        
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.equals("async")) {
+                if (!instructions.isEmpty() || async) {
+                    throw new IllegalArgumentException("Line " + (i + 1) + ": async must be the first line of a script");
+                }
+                async = true;
+                continue;
+            }
+            instructions.add(compileLine(line, i + 1));
+        }
+        
+        return new CompiledScript(source, link(instructions), async);
+    }
+    
+    /**
+     * Match blocks and resolve jump targets. else and elif become a JUMP to the end of the
+     * block followed by the next branch, endif disappears, so a false condition lands on
+     * the next branch in one step instead of skipping its lines one by one.
+     */
+    private Instruction[] link(List<Instruction> source) {
+        List<Instruction> out = new ArrayList<>(source.size());
+        List<Integer> jumps = new ArrayList<>(source.size());
+        Deque<Block> blocks = new ArrayDeque<>();
+        Map<String, Integer> definitions = new HashMap<>();
+        List<Integer> calls = new ArrayList<>();
+        
+        for (Instruction instruction : source) {
+            switch (instruction.opcode) {
+                case IF: {
+                    Block block = new Block(instruction);
+                    block.pendingFalse = emit(out, jumps, instruction);
+                    blocks.push(block);
+                    break;
+                }
+                
+                case ELIF: {
+                    Block block = openIf(blocks, instruction);
+                    block.exits.add(emit(out, jumps, new Instruction(Opcode.JUMP, instruction.line, instruction.text)));
+                    jumps.set(block.pendingFalse, out.size());
+                    block.pendingFalse = emit(out, jumps, instruction.withOpcode(Opcode.IF));
+                    break;
+                }
+                
+                case ELSE: {
+                    Block block = openIf(blocks, instruction);
+                    block.exits.add(emit(out, jumps, instruction.withOpcode(Opcode.JUMP)));
+                    jumps.set(block.pendingFalse, out.size());
+                    block.pendingFalse = -1;
+                    break;
+                }
+                
+                case ENDIF: {
+                    Block block = blocks.peek();
+                    if (block == null || block.start.opcode != Opcode.IF) {
+                        throw error(instruction, "endif without if");
+                    }
+                    blocks.pop();
+                    if (block.pendingFalse >= 0) {
+                        jumps.set(block.pendingFalse, out.size());
+                    }
+                    for (int exit : block.exits) {
+                        jumps.set(exit, out.size());
+                    }
+                    break;
+                }
+                
+                case LOOP:
+                case FOREACH: {
+                    Block block = new Block(instruction);
+                    block.startIndex = emit(out, jumps, instruction);
+                    blocks.push(block);
+                    break;
+                }
+                
+                case ENDLOOP: {
+                    Block block = blocks.peek();
+                    if (block == null || block.start.opcode != Opcode.LOOP) {
+                        throw error(instruction, "endloop without loop");
+                    }
+                    blocks.pop();
+                    closeLoop(out, jumps, block, instruction);
+                    break;
+                }
+                
+                case ENDFOREACH: {
+                    Block block = blocks.peek();
+                    if (block == null || block.start.opcode != Opcode.FOREACH) {
+                        throw error(instruction, "endforeach without foreach");
+                    }
+                    blocks.pop();
+                    // The end assigns the next item, so it writes the same variable as the start
+                    closeLoop(out, jumps, block, instruction.withSlot(block.start.slot));
+                    break;
+                }
+                
+                case FUNC: {
+                    if (!blocks.isEmpty()) {
+                        throw error(instruction, "functions must be defined outside of other blocks");
+                    }
+                    Block block = new Block(instruction);
+                    block.startIndex = emit(out, jumps, instruction);
+                    if (definitions.putIfAbsent(instruction.args[0], block.startIndex) != null) {
+                        throw error(instruction, "function " + instruction.args[0] + " is already defined");
+                    }
+                    blocks.push(block);
+                    break;
+                }
+                
+                case ENDFUNC: {
+                    Block block = blocks.peek();
+                    if (block == null || block.start.opcode != Opcode.FUNC) {
+                        throw error(instruction, instruction.text + " without function");
+                    }
+                    blocks.pop();
+                    jumps.set(block.startIndex, emit(out, jumps, instruction) + 1);
+                    break;
+                }
+                
+                case CALL:
+                    calls.add(emit(out, jumps, instruction));
+                    break;
+                
+                case BREAK:
+                case CONTINUE: {
+                    Block loop = null;
+                    for (Block block : blocks) {
+                        if (block.start.opcode == Opcode.FUNC) {
+                            break;
+                        }
+                        if (block.start.opcode == Opcode.LOOP || block.start.opcode == Opcode.FOREACH) {
+                            loop = block;
+                            break;
+                        }
+                    }
+                    if (loop == null) {
+                        throw error(instruction, instruction.text + " outside of a loop");
+                    }
+                    loop.exits.add(emit(out, jumps, instruction));
+                    break;
+                }
+                
+                default:
+                    emit(out, jumps, instruction);
+                    break;
+            }
+        }
+        
+        if (!blocks.isEmpty()) {
+            Block block = blocks.peek();
+            throw error(block.start, "missing " + endOf(block.start.opcode));
+        }
+        
+        // Calls may come before the function they call
+        for (int index : calls) {
+            Instruction call = out.get(index);
+            Integer definition = definitions.get(call.functionName);
+            if (definition == null) {
+                throw error(call, "unknown function " + call.functionName);
+            }
+            int[] parameters = out.get(definition).parameters;
+            if (call.arguments.size() > parameters.length) {
+                throw error(call, "function " + call.functionName + " takes " + parameters.length + " arguments, got "
+                        + call.arguments.size());
+            }
+            out.set(index, call.withParameters(parameters));
+            jumps.set(index, definition + 1);
+        }
+        
+        Instruction[] linked = new Instruction[out.size()];
+        for (int i = 0; i < linked.length; i++) {
+            int jump = jumps.get(i);
+            linked[i] = jump >= 0 ? out.get(i).withJump(jump) : out.get(i);
+        }
+        return linked;
+    }
+    
+    /**
+     * Emit the end of a loop block: the end jumps back to the first line of the body, the
+     * start past the end, break past the end and continue to the end.
+     */
+    private static void closeLoop(List<Instruction> out, List<Integer> jumps, Block block, Instruction end) {
+        int index = emit(out, jumps, end);
+        jumps.set(index, block.startIndex + 1);
+        jumps.set(block.startIndex, index + 1);
+        for (int exit : block.exits) {
+            jumps.set(exit, out.get(exit).opcode == Opcode.BREAK ? index + 1 : index);
+        }
+    }
+    
+    private static String endOf(Opcode opcode) {
+        switch (opcode) {
+            case LOOP:
+                return "endloop";
+            case FOREACH:
+                return "endforeach";
+            case FUNC:
+                return "endfunction";
+            default:
+                return "endif";
+        }
+    }
+    
+    private static int emit(List<Instruction> out, List<Integer> jumps, Instruction instruction) {
+        out.add(instruction);
+        jumps.add(-1);
+        return out.size() - 1;
+    }
+    
+    private static Block openIf(Deque<Block> blocks, Instruction instruction) {
+        Block block = blocks.peek();
+        if (block == null || block.start.opcode != Opcode.IF || block.pendingFalse < 0) {
+            throw error(instruction, instruction.text + " without matching if");
+        }
+        return block;
+    }
+    
+    private static IllegalArgumentException error(Instruction instruction, String message) {
+        return new IllegalArgumentException("Line " + instruction.line + ": " + message);
+    }
+    
+    private Instruction compileLine(String line, int lineNumber) {
+        int length = line.length();
+        int keywordEnd = 0;
+        while (keywordEnd < length && isKeywordChar(line.charAt(keywordEnd))) {
+            keywordEnd++;
+        }
+        
+        String keyword = line.substring(0, keywordEnd);
+        int restStart = skipWhitespace(line, keywordEnd);
+        boolean colon = restStart < length && line.charAt(restStart) == ':';
+        if (colon) {
+            restStart = skipWhitespace(line, restStart + 1);
+        }
+        String rest = line.substring(restStart);
+        
+        Instruction instruction = colon
+                ? compileColonForm(keyword, rest, line, lineNumber)
+                : compileWordForm(keyword, rest, line, lineNumber);
+        if (instruction != null) {
+            return instruction;
+        }
+        
+        return compileFunctionCall(line, lineNumber);
+    }
+    
+    /**
+     * Lines of the form {@code keyword: arguments}.
+     */
+    private Instruction compileColonForm(String keyword, String rest, String line, int lineNumber) {
+        switch (keyword) {
+            case "cmd":
+                return rest.isEmpty() ? null : templated(Opcode.COMMAND, lineNumber, line, rest);
+            
+            case "open": {
+                String[] parts = rest.isEmpty() ? NO_ARGS : splitArgs(rest);
+                if (parts.length < 1 || parts.length > 2) {
+                    return null;
+                }
+                return new Instruction(Opcode.OPEN_GUI, lineNumber, line, parts[0], parts.length > 1 ? parts[1] : null);
+            }
+            
+            case "msg":
+                return rest.isEmpty() ? null : templated(Opcode.MESSAGE, lineNumber, line, rest);
+            
+            case "console":
+                return rest.isEmpty() ? null : templated(Opcode.CONSOLE, lineNumber, line, rest);
+            
+            case "perm":
+                return rest.isEmpty() ? null : new Instruction(Opcode.PERMISSION, lineNumber, line, rest);
+            
+            case "include":
+                return include(rest, line, lineNumber);
+            
+            default:
+                return null;
+        }
+    }
+    
+    private static Instruction conditional(Opcode opcode, String condition, String line, int lineNumber) {
+        Instruction instruction = new Instruction(opcode, lineNumber, line, condition);
+        try {
+            return instruction.withCondition(ConditionParser.parse(condition));
+        } catch (IllegalArgumentException e) {
+            throw error(instruction, e.getMessage());
+        }
+    }
+    
+    /**
+     * Lines of the form {@code keyword arguments}, without a colon.
+     */
+    private Instruction compileWordForm(String keyword, String rest, String line, int lineNumber) {
+        switch (keyword) {
+            case "if":
+                return rest.isEmpty() ? null : conditional(Opcode.IF, rest, line, lineNumber);
+            
+            case "elif":
+                return rest.isEmpty() ? null : conditional(Opcode.ELIF, rest, line, lineNumber);
+            
+            case "else":
+                return rest.isEmpty() ? new Instruction(Opcode.ELSE, lineNumber, line) : null;
+            
+            case "endif":
+                return rest.isEmpty() ? new Instruction(Opcode.ENDIF, lineNumber, line) : null;
+            
+            case "loop":
+                return rest.isEmpty() ? null : templated(Opcode.LOOP, lineNumber, line, rest);
+            
+            case "endloop":
+                return rest.isEmpty() ? new Instruction(Opcode.ENDLOOP, lineNumber, line) : null;
+            
+            case "foreach":
+                return foreach(rest, line, lineNumber);
+            
+            case "endforeach":
+                return rest.isEmpty() ? new Instruction(Opcode.ENDFOREACH, lineNumber, line) : null;
+            
+            case "func":
+            case "function":
+                return function(rest, line, lineNumber);
+            
+            case "endfunc":
+            case "endfunction":
+                return rest.isEmpty() ? new Instruction(Opcode.ENDFUNC, lineNumber, line) : null;
+            
+            case "call":
+                return call(rest, line, lineNumber);
+            
+            case "return":
+                return new Instruction(Opcode.RETURN, lineNumber, line, new String[] {rest},
+                        new Template[] {rest.isEmpty() ? null : Template.parse(rest)});
+            
+            case "break":
+                return rest.isEmpty() ? new Instruction(Opcode.BREAK, lineNumber, line) : null;
+            
+            case "continue":
+                return rest.isEmpty() ? new Instruction(Opcode.CONTINUE, lineNumber, line) : null;
+            
+            case "close":
+                return rest.isEmpty() ? new Instruction(Opcode.CLOSE_GUI, lineNumber, line) : null;
+            
+            case "include":
+                return include(rest, line, lineNumber);
+            
+            case "set": {
+                int nameEnd = variableEnd(rest, 0);
+                int valueStart = skipWhitespace(rest, nameEnd);
+                if (nameEnd == 0 || valueStart == nameEnd || valueStart >= rest.length()) {
+                    return null;
+                }
+                String name = rest.substring(0, nameEnd);
+                String value = rest.substring(valueStart);
+                Template[] templates = {null, Template.parse(value)};
+                if (GlobalVariables.isGlobal(name)) {
+                    return new Instruction(Opcode.GLOBAL_SET, lineNumber, line, new String[] {name, value}, templates)
+                            .withGlobal(GlobalVariables.cell(name));
+                }
+                return new Instruction(Opcode.SET, lineNumber, line, new String[] {name, value}, templates)
+                        .withSlot(SymbolTable.slotOf(name));
+            }
+            
+            case "math": {
+                int nameEnd = variableEnd(rest, 0);
+                int operatorStart = skipWhitespace(rest, nameEnd);
+                if (nameEnd == 0 || operatorStart == nameEnd || operatorStart >= rest.length()
+                        || "+-*/".indexOf(rest.charAt(operatorStart)) < 0) {
+                    return null;
+                }
+                int valueStart = skipWhitespace(rest, operatorStart + 1);
+                if (valueStart == operatorStart + 1 || valueStart >= rest.length()) {
+                    return null;
+                }
+                String name = rest.substring(0, nameEnd);
+                String value = rest.substring(valueStart);
+                String[] args = {name, String.valueOf(rest.charAt(operatorStart)), value};
+                Template[] templates = {null, null, Template.parse(value)};
+                if (GlobalVariables.isGlobal(name)) {
+                    return new Instruction(Opcode.GLOBAL_MATH, lineNumber, line, args, templates)
+                            .withGlobal(GlobalVariables.cell(name));
+                }
+                return new Instruction(Opcode.MATH, lineNumber, line, args, templates).withSlot(SymbolTable.slotOf(name));
+            }
+            
+            default: {
+                // Registered functions may also be called without a colon, e.g. "heal" or "random x 1 10"
+                ScriptFunction function = keyword.isEmpty() ? null : functions.get(keyword);
+                if (function == null) {
+                    return null;
+                }
+                return functionCall(new Instruction(Opcode.FUNCTION, lineNumber, line, Arguments.parse(rest), keyword, function));
+            }
+        }
+    }
+    
+    /**
+     * {@code foreach name in online} or {@code foreach name in list}, where the list is a
+     * variable name or a template. Online players are marked by a null source template.
+     */
+    private static Instruction foreach(String rest, String line, int lineNumber) {
+        int nameEnd = variableEnd(rest, 0);
+        int inStart = skipWhitespace(rest, nameEnd);
+        if (nameEnd == 0 || inStart == nameEnd || !rest.startsWith("in", inStart)) {
+            return null;
+        }
+        int sourceStart = skipWhitespace(rest, inStart + 2);
+        if (sourceStart == inStart + 2 || sourceStart >= rest.length()) {
+            return null;
+        }
+        
+        String name = rest.substring(0, nameEnd);
+        String source = rest.substring(sourceStart);
+        Template template = null;
+        if (!source.equals(ForEach.ONLINE)) {
+            // A bare name reads the variable itself, so lists stay lists
+            template = Template.parse(identifierEnd(source, 0) == source.length() ? "{" + source + "}" : source);
+        }
+        
+        Instruction instruction = new Instruction(Opcode.FOREACH, lineNumber, line, new String[] {name, source},
+                new Template[] {null, template});
+        if (GlobalVariables.isGlobal(name)) {
+            throw error(instruction, "foreach cannot iterate into a global variable");
+        }
+        return instruction.withSlot(SymbolTable.slotOf(name));
+    }
+    
+    /**
+     * {@code func name} or {@code func name(a, b)}; {@code function} is the same.
+     */
+    private static Instruction function(String rest, String line, int lineNumber) {
+        int nameEnd = identifierEnd(rest, 0);
+        if (nameEnd == 0) {
+            return null;
+        }
+        String name = rest.substring(0, nameEnd);
+        String list = rest.substring(nameEnd).trim();
+        Instruction instruction = new Instruction(Opcode.FUNC, lineNumber, line, name);
+        if (list.isEmpty()) {
+            return instruction.withParameters(new int[0]);
+        }
+        if (!list.startsWith("(") || !list.endsWith(")")) {
+            throw error(instruction, "expected func " + name + "(parameters)");
+        }
+        
+        String inner = list.substring(1, list.length() - 1).trim();
+        String[] names = inner.isEmpty() ? NO_ARGS : inner.split("\\s*,\\s*");
+        int[] parameters = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].isEmpty() || identifierEnd(names[i], 0) != names[i].length()) {
+                throw error(instruction, "invalid parameter name '" + names[i] + "'");
+            }
+            for (int j = 0; j < i; j++) {
+                if (names[j].equals(names[i])) {
+                    throw error(instruction, "duplicate parameter " + names[i]);
+                }
+            }
+            parameters[i] = SymbolTable.slotOf(names[i]);
+        }
+        return instruction.withParameters(parameters);
+    }
+    
+    /**
+     * {@code call name arguments} with an optional {@code -> variable} for the returned value.
+     * The target and parameters are filled in when blocks are linked.
+     */
+    private static Instruction call(String rest, String line, int lineNumber) {
+        int nameEnd = identifierEnd(rest, 0);
+        if (nameEnd == 0 || (nameEnd < rest.length() && !Character.isWhitespace(rest.charAt(nameEnd)))) {
+            return null;
+        }
+        
+        String name = rest.substring(0, nameEnd);
+        String arguments = rest.substring(nameEnd);
+        String result = null;
+        int arrow = arguments.lastIndexOf("->");
+        if (arrow >= 0 && arguments.substring(0, arrow).chars().filter(c -> c == '"').count() % 2 == 0) {
+            result = arguments.substring(arrow + 2).trim();
+            arguments = arguments.substring(0, arrow);
+        }
+        
+        Instruction instruction = new Instruction(Opcode.CALL, lineNumber, line, Arguments.parse(arguments), name, null);
+        if (result == null) {
+            return instruction;
+        }
+        if (identifierEnd(result, 0) != result.length()) {
+            throw error(instruction, "invalid result variable '" + result + "'");
+        }
+        return instruction.withSlot(SymbolTable.slotOf(result));
+    }
+    
+    private Instruction include(String rest, String line, int lineNumber) {
+        if (rest.isEmpty()) {
+            return null;
+        }
+        
+        String name = splitArgs(rest)[0];
+        Template template = Template.parse(name);
+        Instruction instruction = new Instruction(Opcode.INCLUDE, lineNumber, line, new String[] {name},
+                new Template[] {template});
+        // Names with placeholders are looked up when the line runs
+        if (library != null && template.isConstant()) {
+            instruction = instruction.withInclude(library.reference(name));
+        }
+        return instruction;
+    }
+    
+    /**
+     * Bind calls to typed functions, checking them against the signature.
+     */
+    private static Instruction functionCall(Instruction instruction) {
+        if (!(instruction.function instanceof TypedFunction)) {
+            return instruction;
+        }
+        try {
+            return instruction.withCall(TypedCall.bind((TypedFunction) instruction.function, instruction.args));
+        } catch (IllegalArgumentException e) {
+            throw error(instruction, e.getMessage());
+        }
+    }
+    
+    private Instruction compileFunctionCall(String line, int lineNumber) {
+        // Anything else with a colon is a registered function call. The function itself is
+        // resolved now if it is known, otherwise it is looked up again when the line runs.
+        int colon = line.indexOf(':');
+        if (colon >= 0) {
+            String functionName = line.substring(0, colon).trim();
+            return functionCall(new Instruction(Opcode.FUNCTION, lineNumber, line,
+                    Arguments.parse(line.substring(colon + 1)), functionName, functions.get(functionName)));
+        }
+        
+        return new Instruction(Opcode.UNKNOWN, lineNumber, line);
+    }
+    
+    private static Instruction templated(Opcode opcode, int lineNumber, String line, String arg) {
+        return new Instruction(opcode, lineNumber, line, new String[] {arg}, new Template[] {Template.parse(arg)});
+    }
+    
+    private static String[] splitArgs(String args) {
+        return WHITESPACE_PATTERN.split(args);
+    }
+    
+    private static boolean isKeywordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+    
+    private static int identifierEnd(String text, int from) {
+        int i = from;
+        while (i < text.length() && isKeywordChar(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * Like {@link #identifierEnd} but also takes dots, for {@code global.} names.
+     */
+    private static int variableEnd(String text, int from) {
+        int i = from;
+        while (i < text.length() && (isKeywordChar(text.charAt(i)) || text.charAt(i) == '.')) {
+            i++;
+        }
+        return i;
+    }
+    
+    private static int skipWhitespace(String text, int from) {
+        int i = from;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+    
+    private static final class Block {
+        final Instruction start;
+        final List<Integer> exits = new ArrayList<>();
+        int startIndex = -1;
+        int pendingFalse = -1;
+        
+        Block(Instruction start) {
+            this.start = start;
+        }
+    }
+}
@@ -1,65 +1,411 @@
 package ru.c0rex86.lingui.script;
 
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
 import ru.c0rex86.lingui.LinGUi;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * State of one script run: variables, limits, the frames of running scripts and
+ * everything a suspended script needs to resume. Contexts made by
+ * {@link ScriptManagerImpl} for a single run are pooled and {@link #reset} between runs.
+ */
 public class ScriptContext {
     
-    private final Player player;
-    private final Map<String, Object> variables;
+    private static final byte UNSET = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final int MAX_CALL_DEPTH = 256;
+    private static final int INITIAL_SLOTS = 16;
+    
+    private Player player;
+    // Variables live in slots assigned by the SymbolTable. Numbers are kept unboxed in
+    // primitives (double values as raw long bits) and tagged by kind; everything else in values.
+    // The arrays are sized to the table and kept by pooled contexts; usedSlots bounds the
+    // slots written since the last clear, so clearing does not walk the whole table.
+    private byte[] kinds;
+    private long[] primitives;
+    private Object[] values;
+    private int usedSlots;
+    // Variables under names that no compiled script uses
+    private Map<String, Object> unslottedVariables;
+    // Caller's variables, read through instead of copied. Values move into the slots when
+    // first read, and the rest when the map could change under a script that outlives the call.
+    private Map<String, Object> overlay;
+    private ScriptLimits limits;
     private Object result;
-    private boolean cancelled;
+    // Set from the main thread while the script may run on a virtual thread
+    private volatile boolean cancelled;
     private int commandCount;
+    private int loopIterations;
     private long startTime;
-    private final Stack<Object> dataStack;
-    private final Stack<Boolean> conditionStack;
+    // Start of the current tick slice and the command count when the last foreach iteration began
+    private long sliceStart;
+    private int commandMark;
+    private Object[] dataStack;
+    private int dataSize;
+    private boolean[] conditionStack;
+    private int conditionSize;
     private boolean skipMode;
     private final LinGUi plugin;
+    // Frames are kept when popped and reused by the next push
+    private Frame[] frames;
+    private int frameCount;
+    private ScriptArguments[] argumentPool;
+    private int argumentDepth;
+    // Calls of script functions: where each returns to, the loop depth and frame it was
+    // made from, and the callee's parameters. The caller's values of those parameters wait
+    // in the saved arrays, which also stage the arguments of the next call.
+    private int[] callReturns;
+    private int[] callLoopDepths;
+    private int[] callFrames;
+    private int[][] callParameters;
+    private int callDepth;
+    private byte[] savedKinds;
+    private long[] savedPrimitives;
+    private Object[] savedValues;
+    private int savedTop;
+    private boolean suspended;
+    private long suspendMillis;
+    private long resumeAt;
+    private BukkitTask resumeTask;
+    // Main thread actions of a script running off the main thread, null otherwise
+    private List<Runnable> effects;
+    // What a script off the main thread sees of the server, taken by snapshotServer
+    private String worldName;
+    private Object[] onlinePlayers;
+    private Set<Object> onlineSet;
+    private Map<String, Boolean> permissions;
     
     public ScriptContext(Player player, LinGUi plugin) {
+        this(player, plugin, ScriptLimits.load(plugin));
+    }
+    
+    public ScriptContext(Player player, Map<String, Object> variables, LinGUi plugin) {
+        this(player, plugin, ScriptLimits.load(plugin));
+        variables.forEach(this::setVariable);
+    }
+    
+    ScriptContext(Player player, LinGUi plugin, ScriptLimits limits) {
         this.player = player;
-        this.variables = new HashMap<>();
+        allocateSlots();
         this.result = null;
         this.cancelled = false;
         this.commandCount = 0;
         this.startTime = System.currentTimeMillis();
-        this.dataStack = new Stack<>();
-        this.conditionStack = new Stack<>();
+        this.sliceStart = System.nanoTime();
         this.skipMode = false;
         this.plugin = plugin;
+        this.limits = limits;
+        this.frames = new Frame[4];
     }
     
-    public ScriptContext(Player player, Map<String, Object> variables, LinGUi plugin) {
+    /**
+     * Prepare a pooled context for a new run. The variables are read through rather than
+     * copied, so the caller must not change them while the script runs.
+     */
+    void reset(Player player, Map<String, Object> variables, ScriptLimits limits) {
         this.player = player;
-        this.variables = new HashMap<>(variables);
-        this.result = null;
-        this.cancelled = false;
-        this.commandCount = 0;
+        this.overlay = variables == null || variables.isEmpty() ? null : variables;
+        this.limits = limits;
         this.startTime = System.currentTimeMillis();
-        this.dataStack = new Stack<>();
-        this.conditionStack = new Stack<>();
-        this.skipMode = false;
-        this.plugin = plugin;
+        this.sliceStart = System.nanoTime();
+    }
+    
+    /**
+     * Forget everything of the last run so a pooled context keeps no references.
+     */
+    void clear() {
+        Arrays.fill(kinds, 0, usedSlots, UNSET);
+        Arrays.fill(values, 0, usedSlots, null);
+        usedSlots = 0;
+        unslottedVariables = null;
+        overlay = null;
+        player = null;
+        result = null;
+        cancelled = false;
+        commandCount = 0;
+        loopIterations = 0;
+        commandMark = 0;
+        if (dataStack != null) {
+            Arrays.fill(dataStack, 0, dataSize, null);
+        }
+        dataSize = 0;
+        conditionSize = 0;
+        skipMode = false;
+        unwindFrames(0);
+        savedTop = 0;
+        argumentDepth = 0;
+        suspended = false;
+        suspendMillis = 0;
+        resumeAt = 0;
+        resumeTask = null;
+        effects = null;
+        worldName = null;
+        onlinePlayers = null;
+        onlineSet = null;
+        permissions = null;
     }
     
     public Player getPlayer() {
         return player;
     }
     
+    /**
+     * Get a map view of the variables. The view is built on demand; reads and writes
+     * through it go to the same storage as {@link #getVariable} and {@link #setVariable}.
+     */
     public Map<String, Object> getVariables() {
-        return variables;
+        return new VariableMap();
     }
     
+    /**
+     * Names starting with {@code global.} read and write the server-wide {@link GlobalVariables}.
+     */
     public Object getVariable(String name) {
-        return variables.get(name);
+        if (GlobalVariables.isGlobal(name)) {
+            return GlobalVariables.cell(name).get();
+        }
+        int slot = SymbolTable.find(name);
+        if (slot >= 0) {
+            return getVariable(slot);
+        }
+        Object value = unslottedVariables != null ? unslottedVariables.get(name) : null;
+        return value != null || overlay == null ? value : overlay.get(name);
     }
     
     public void setVariable(String name, Object value) {
-        variables.put(name, value);
+        if (GlobalVariables.isGlobal(name)) {
+            GlobalVariables.cell(name).set(value);
+            return;
+        }
+        int slot = SymbolTable.find(name);
+        if (slot >= 0) {
+            setVariable(slot, value);
+        } else {
+            if (unslottedVariables == null) {
+                unslottedVariables = new HashMap<>();
+            }
+            unslottedVariables.put(name, value);
+        }
+    }
+    
+    private void allocateSlots() {
+        int size = Math.max(SymbolTable.size(), INITIAL_SLOTS);
+        this.kinds = new byte[size];
+        this.primitives = new long[size];
+        this.values = new Object[size];
+    }
+    
+    private void ensureSlot(int slot) {
+        if (slot >= usedSlots) {
+            if (slot >= kinds.length) {
+                int size = Math.max(slot + 1, Math.max(SymbolTable.size(), kinds.length * 2));
+                kinds = Arrays.copyOf(kinds, size);
+                primitives = Arrays.copyOf(primitives, size);
+                values = Arrays.copyOf(values, size);
+            }
+            usedSlots = slot + 1;
+        }
+    }
+    
+    /**
+     * A name can get its slot after a value was already stored under it, when a script
+     * using it is compiled after this context was created. Such values, and values of the
+     * caller's overlay, move into the slot the first time the slot is read.
+     */
+    private boolean isUnset(int slot) {
+        if (slot < usedSlots && kinds[slot] != UNSET) {
+            return false;
+        }
+        boolean unslotted = unslottedVariables != null && !unslottedVariables.isEmpty();
+        if (!unslotted && overlay == null) {
+            return true;
+        }
+        
+        String name = SymbolTable.nameOf(slot);
+        Object value = unslotted ? unslottedVariables.remove(name) : null;
+        if (value == null && overlay != null) {
+            value = overlay.get(name);
+        }
+        if (value == null) {
+            return true;
+        }
+        setVariable(slot, value);
+        return kinds[slot] == UNSET;
+    }
+    
+    /**
+     * Copy what is left of the caller's overlay into this context's own storage, before the
+     * script outlives the call or a variable is removed that the overlay would bring back.
+     */
+    void detachOverlay() {
+        Map<String, Object> source = overlay;
+        if (source == null) {
+            return;
+        }
+        overlay = null;
+        source.forEach((name, value) -> {
+            int slot = SymbolTable.find(name);
+            boolean present = slot >= 0
+                    ? slot < usedSlots && kinds[slot] != UNSET
+                    : unslottedVariables != null && unslottedVariables.containsKey(name);
+            if (!present) {
+                setVariable(name, value);
+            }
+        });
+    }
+    
+    boolean hasVariable(int slot) {
+        return !isUnset(slot);
+    }
+    
+    Object getVariable(int slot) {
+        if (isUnset(slot)) {
+            return null;
+        }
+        switch (kinds[slot]) {
+            case REFERENCE:
+                return values[slot];
+            case INT:
+                return (int) primitives[slot];
+            case LONG:
+                return primitives[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(primitives[slot]);
+            default:
+                return null;
+        }
+    }
+    
+    void setVariable(int slot, Object value) {
+        ensureSlot(slot);
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            kinds[slot] = INT;
+            primitives[slot] = ((Number) value).intValue();
+            values[slot] = null;
+        } else if (value instanceof Long) {
+            kinds[slot] = LONG;
+            primitives[slot] = (Long) value;
+            values[slot] = null;
+        } else if (value instanceof Double || value instanceof Float) {
+            setNumber(slot, ((Number) value).doubleValue());
+        } else if (value != null) {
+            kinds[slot] = REFERENCE;
+            values[slot] = value;
+        } else {
+            removeVariable(slot);
+        }
+    }
+    
+    void removeVariable(int slot) {
+        detachOverlay();
+        if (slot < usedSlots) {
+            kinds[slot] = UNSET;
+            values[slot] = null;
+        }
+    }
+    
+    /**
+     * Read a variable as a number without boxing. Text values are parsed.
+     *
+     * @throws NumberFormatException If the variable is unset or not numeric
+     */
+    double getNumber(int slot) {
+        if (isUnset(slot)) {
+            throw new NumberFormatException("empty String");
+        }
+        switch (kinds[slot]) {
+            case INT:
+            case LONG:
+                return primitives[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(primitives[slot]);
+            case REFERENCE:
+                Object value = values[slot];
+                return value instanceof Number ? ((Number) value).doubleValue() : Template.parseNumber(value.toString());
+            default:
+                throw new NumberFormatException("empty String");
+        }
+    }
+    
+    /**
+     * Like {@link #getNumber(int)} but returns NaN instead of throwing.
+     */
+    double getNumberOrNaN(int slot) {
+        if (isUnset(slot)) {
+            return Double.NaN;
+        }
+        switch (kinds[slot]) {
+            case INT:
+            case LONG:
+                return primitives[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(primitives[slot]);
+            default:
+                Object value = values[slot];
+                return value instanceof Number ? ((Number) value).doubleValue() : Template.toNumberOrNaN(value.toString());
+        }
+    }
+    
+    void setNumber(int slot, double value) {
+        ensureSlot(slot);
+        kinds[slot] = DOUBLE;
+        primitives[slot] = Double.doubleToRawLongBits(value);
+        values[slot] = null;
+    }
+    
+    void copyVariable(int from, int to) {
+        if (isUnset(from)) {
+            ensureSlot(to);
+            kinds[to] = REFERENCE;
+            values[to] = "";
+            return;
+        }
+        ensureSlot(to);
+        kinds[to] = kinds[from];
+        primitives[to] = primitives[from];
+        values[to] = values[from];
+    }
+    
+    /**
+     * Append a variable's text form without boxing numbers. Unset variables append nothing.
+     */
+    void appendVariable(int slot, StringBuilder target) {
+        if (isUnset(slot)) {
+            return;
+        }
+        switch (kinds[slot]) {
+            case REFERENCE:
+                target.append(values[slot]);
+                break;
+            case INT:
+                target.append((int) primitives[slot]);
+                break;
+            case LONG:
+                target.append(primitives[slot]);
+                break;
+            case DOUBLE:
+                target.append(Double.longBitsToDouble(primitives[slot]));
+                break;
+            default:
+                break;
+        }
     }
     
     public Object getResult() {
@@ -80,19 +426,32 @@ public class ScriptContext {
     
     public void cancel() {
         this.cancelled = true;
+        if (resumeTask != null) {
+            resumeTask.cancel();
+            resumeTask = null;
+        }
     }
     
     public void incrementCommandCount() {
         this.commandCount++;
         
-        int maxCommands = plugin.getConfig().getInt("script.max-commands", 10);
+        int maxCommands = limits.maxCommands;
         if (maxCommands > 0 && this.commandCount > maxCommands) {
             throw new RuntimeException("Script exceeded maximum command limit of " + maxCommands);
         }
     }
     
+    public void incrementLoopIterations() {
+        this.loopIterations++;
+        
+        int maxIterations = limits.maxLoopIterations;
+        if (maxIterations > 0 && this.loopIterations > maxIterations) {
+            throw new RuntimeException("Script exceeded maximum loop iteration limit of " + maxIterations);
+        }
+    }
+    
     public boolean isTimedOut() {
-        long timeout = plugin.getConfig().getLong("script.timeout", 1000);
+        long timeout = limits.timeout;
         if (timeout <= 0) {
             return false;
         }
@@ -102,49 +461,94 @@ public class ScriptContext {
     
     public void resetStartTime() {
         this.startTime = System.currentTimeMillis();
+        this.sliceStart = System.nanoTime();
+    }
+    
+    void markIteration() {
+        this.commandMark = commandCount;
+    }
+    
+    /**
+     * Decide between two iterations of a time-sliced loop whether to pause until the next
+     * tick: either the slice has used its time budget, or another iteration like the last
+     * one would go over the command limit.
+     */
+    boolean isSliceSpent(long budgetNanos) {
+        int used = commandCount - commandMark;
+        commandMark = commandCount;
+        if (System.nanoTime() - sliceStart > budgetNanos) {
+            return true;
+        }
+        if (used == 0) {
+            return false;
+        }
+        
+        int maxCommands = limits.maxCommands;
+        return maxCommands > 0 && commandCount + used > maxCommands;
+    }
+    
+    /**
+     * Pause the script until the next tick. Commands of the next slice count from zero.
+     */
+    void yieldSlice() {
+        this.commandCount = 0;
+        this.commandMark = 0;
+        suspend(0);
     }
     
     public void pushData(Object data) {
-        dataStack.push(data);
+        if (dataStack == null) {
+            dataStack = new Object[8];
+        } else if (dataSize == dataStack.length) {
+            dataStack = Arrays.copyOf(dataStack, dataSize * 2);
+        }
+        dataStack[dataSize++] = data;
     }
     
     public Object popData() {
-        if (dataStack.isEmpty()) {
+        if (dataSize == 0) {
             throw new RuntimeException("Stack is empty");
         }
-        return dataStack.pop();
+        Object data = dataStack[--dataSize];
+        dataStack[dataSize] = null;
+        return data;
     }
     
     public Object peekData() {
-        if (dataStack.isEmpty()) {
+        if (dataSize == 0) {
             throw new RuntimeException("Stack is empty");
         }
-        return dataStack.peek();
+        return dataStack[dataSize - 1];
     }
     
     public void pushCondition(boolean condition) {
-        conditionStack.push(condition);
+        if (conditionStack == null) {
+            conditionStack = new boolean[8];
+        } else if (conditionSize == conditionStack.length) {
+            conditionStack = Arrays.copyOf(conditionStack, conditionSize * 2);
+        }
+        conditionStack[conditionSize++] = condition;
         updateSkipMode();
     }
     
     public boolean popCondition() {
-        if (conditionStack.isEmpty()) {
+        if (conditionSize == 0) {
             throw new RuntimeException("Condition stack is empty");
         }
-        boolean result = conditionStack.pop();
+        boolean result = conditionStack[--conditionSize];
         updateSkipMode();
         return result;
     }
     
     public boolean peekCondition() {
-        if (conditionStack.isEmpty()) {
+        if (conditionSize == 0) {
             return true;
         }
-        return conditionStack.peek();
+        return conditionStack[conditionSize - 1];
     }
     
     private void updateSkipMode() {
-        skipMode = !conditionStack.isEmpty() && !conditionStack.peek();
+        skipMode = conditionSize > 0 && !conditionStack[conditionSize - 1];
     }
     
     public boolean isSkipMode() {
@@ -152,14 +556,718 @@ public class ScriptContext {
     }
     
     public void flipLastCondition() {
-        if (!conditionStack.isEmpty()) {
-            boolean current = conditionStack.pop();
-            conditionStack.push(!current);
+        if (conditionSize > 0) {
+            conditionStack[conditionSize - 1] = !conditionStack[conditionSize - 1];
             updateSkipMode();
         }
     }
     
+    /**
+     * Suspend the running script. The interpreter stops after the current instruction
+     * and the rest of the script resumes from the scheduler once the delay has passed.
+     *
+     * @param millis The delay in milliseconds
+     */
+    public void suspend(long millis) {
+        this.suspended = true;
+        this.suspendMillis = millis;
+        this.resumeAt = System.currentTimeMillis() + millis;
+    }
+    
+    /**
+     * Suspend the running script so that the current instruction runs again once the delay
+     * has passed, e.g. to wait for data that is still loading.
+     *
+     * @return False if no script is running, in which case nothing is suspended
+     */
+    boolean retryAfter(long millis) {
+        if (frameCount == 0) {
+            return false;
+        }
+        frames[frameCount - 1].instructionPointer--;
+        suspend(millis);
+        return true;
+    }
+    
+    public boolean isSuspended() {
+        return suspended;
+    }
+    
+    public long getResumeAt() {
+        return resumeAt;
+    }
+    
+    /**
+     * @return The source line of the instruction the script is currently at, or -1 if it is not running
+     */
+    public int getCurrentLine() {
+        if (frameCount == 0) {
+            return -1;
+        }
+        Frame frame = frames[frameCount - 1];
+        Instruction[] instructions = frame.script.instructions();
+        int index = Math.min(Math.max(frame.instructionPointer - 1, 0), instructions.length - 1);
+        return index >= 0 ? instructions[index].line : -1;
+    }
+    
+    /**
+     * @return Progress of the innermost running foreach, or null if the script is not in one
+     */
+    public ForEachProgress getForEachProgress() {
+        for (int i = frameCount - 1; i >= 0; i--) {
+            ForEachProgress progress = frames[i].forEachProgress();
+            if (progress != null) {
+                return progress;
+            }
+        }
+        return null;
+    }
+    
+    long getSuspendMillis() {
+        return suspendMillis;
+    }
+    
+    void clearSuspension() {
+        this.suspended = false;
+        this.suspendMillis = 0;
+        this.resumeTask = null;
+    }
+    
+    void setResumeTask(BukkitTask resumeTask) {
+        this.resumeTask = resumeTask;
+    }
+    
+    void pushFrame(CompiledScript script) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        Frame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new Frame();
+            frames[frameCount] = frame;
+        }
+        frame.start(script);
+        frameCount++;
+    }
+    
+    Frame currentFrame() {
+        return frames[frameCount - 1];
+    }
+    
+    void popFrame() {
+        frames[--frameCount].finish();
+    }
+    
+    /**
+     * Take an argument buffer for a typed function call. Buffers are pooled per call depth,
+     * so nested calls each get their own and steady-state calls allocate nothing.
+     */
+    ScriptArguments acquireArguments(int size) {
+        if (argumentPool == null) {
+            argumentPool = new ScriptArguments[4];
+        } else if (argumentDepth == argumentPool.length) {
+            argumentPool = Arrays.copyOf(argumentPool, argumentDepth * 2);
+        }
+        
+        ScriptArguments arguments = argumentPool[argumentDepth];
+        if (arguments == null) {
+            arguments = new ScriptArguments();
+            argumentPool[argumentDepth] = arguments;
+        }
+        argumentDepth++;
+        arguments.reset(size);
+        return arguments;
+    }
+    
+    void releaseArguments() {
+        argumentDepth--;
+    }
+    
+    /**
+     * Stage argument {@code index} of the next call as a copy of a variable, without boxing.
+     */
+    void stageArgument(int index, int slot) {
+        int target = ensureSaved(index);
+        if (isUnset(slot)) {
+            savedKinds[target] = UNSET;
+            savedValues[target] = null;
+            return;
+        }
+        savedKinds[target] = kinds[slot];
+        savedPrimitives[target] = primitives[slot];
+        savedValues[target] = values[slot];
+    }
+    
+    /**
+     * Stage argument {@code index} of the next call. Integers and doubles are stored unboxed.
+     */
+    void stageArgument(int index, Object value) {
+        int target = ensureSaved(index);
+        if (value instanceof Integer) {
+            savedKinds[target] = INT;
+            savedPrimitives[target] = (Integer) value;
+            savedValues[target] = null;
+        } else if (value instanceof Double) {
+            savedKinds[target] = DOUBLE;
+            savedPrimitives[target] = Double.doubleToRawLongBits((Double) value);
+            savedValues[target] = null;
+        } else {
+            savedKinds[target] = value != null ? REFERENCE : UNSET;
+            savedValues[target] = value;
+        }
+    }
+    
+    private int ensureSaved(int index) {
+        int target = savedTop + index;
+        if (savedKinds == null) {
+            int size = Math.max(16, target + 1);
+            savedKinds = new byte[size];
+            savedPrimitives = new long[size];
+            savedValues = new Object[size];
+        } else if (target >= savedKinds.length) {
+            int size = Math.max(target + 1, savedKinds.length * 2);
+            savedKinds = Arrays.copyOf(savedKinds, size);
+            savedPrimitives = Arrays.copyOf(savedPrimitives, size);
+            savedValues = Arrays.copyOf(savedValues, size);
+        }
+        return target;
+    }
+    
+    /**
+     * Enter a script function. The staged arguments are swapped into the parameters, which
+     * puts the caller's values where the arguments were; parameters without an argument
+     * start unset.
+     *
+     * @param staged The number of arguments staged for this call
+     * @param returnTo The instruction to continue at when the function returns
+     */
+    void enterCall(int[] parameters, int staged, Frame frame, int returnTo) {
+        if (callDepth == MAX_CALL_DEPTH) {
+            throw new RuntimeException("Function calls are nested deeper than " + MAX_CALL_DEPTH + " levels");
+        }
+        if (callReturns == null) {
+            callReturns = new int[8];
+            callLoopDepths = new int[8];
+            callFrames = new int[8];
+            callParameters = new int[8][];
+        } else if (callDepth == callReturns.length) {
+            int size = callDepth * 2;
+            callReturns = Arrays.copyOf(callReturns, size);
+            callLoopDepths = Arrays.copyOf(callLoopDepths, size);
+            callFrames = Arrays.copyOf(callFrames, size);
+            callParameters = Arrays.copyOf(callParameters, size);
+        }
+        
+        // An unset parameter must not show the caller's value through the overlay
+        detachOverlay();
+        for (int i = staged; i < parameters.length; i++) {
+            stageArgument(i, null);
+        }
+        for (int i = 0; i < parameters.length; i++) {
+            swapSaved(parameters[i], savedTop + i);
+        }
+        savedTop += parameters.length;
+        
+        callReturns[callDepth] = returnTo;
+        callLoopDepths[callDepth] = frame.loopDepth();
+        callFrames[callDepth] = frameCount;
+        callParameters[callDepth] = parameters;
+        callDepth++;
+    }
+    
+    /**
+     * @return Whether the current frame is inside a script function
+     */
+    boolean isInCall() {
+        return callDepth > 0 && callFrames[callDepth - 1] == frameCount;
+    }
+    
+    /**
+     * Leave the innermost script function: the caller's parameter values come back, loops
+     * started inside the function are dropped and the returned value, staged as argument 0,
+     * goes to the result variable of the call.
+     *
+     * @param returnsValue Whether a value was staged; without one the result variable is cleared
+     * @return The instruction to continue at
+     */
+    int exitCall(Frame frame, boolean returnsValue) {
+        int staged = savedTop;
+        callDepth--;
+        restoreParameters(callParameters[callDepth]);
+        callParameters[callDepth] = null;
+        frame.truncateLoops(callLoopDepths[callDepth]);
+        
+        int returnTo = callReturns[callDepth];
+        int target = frame.script.instructions()[returnTo - 1].slot;
+        if (target >= 0) {
+            if (returnsValue) {
+                swapSaved(target, staged);
+            } else {
+                removeVariable(target);
+            }
+        }
+        if (returnsValue) {
+            savedValues[staged] = null;
+        }
+        return returnTo;
+    }
+    
+    private void restoreParameters(int[] parameters) {
+        savedTop -= parameters.length;
+        for (int i = 0; i < parameters.length; i++) {
+            swapSaved(parameters[i], savedTop + i);
+            savedValues[savedTop + i] = null;
+        }
+    }
+    
+    private void swapSaved(int slot, int saved) {
+        isUnset(slot);
+        ensureSlot(slot);
+        byte kind = kinds[slot];
+        long primitive = primitives[slot];
+        Object value = values[slot];
+        kinds[slot] = savedKinds[saved];
+        primitives[slot] = savedPrimitives[saved];
+        values[slot] = savedValues[saved];
+        savedKinds[saved] = kind;
+        savedPrimitives[saved] = primitive;
+        savedValues[saved] = value;
+    }
+    
+    /**
+     * @return Whether the script is on this context's stack, i.e. including it again would recurse
+     */
+    boolean isRunning(CompiledScript script) {
+        for (int i = 0; i < frameCount; i++) {
+            if (frames[i].script == script) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    int getFrameCount() {
+        return frameCount;
+    }
+    
+    void unwindFrames(int depth) {
+        while (callDepth > 0 && callFrames[callDepth - 1] > depth) {
+            callDepth--;
+            restoreParameters(callParameters[callDepth]);
+            callParameters[callDepth] = null;
+        }
+        while (frameCount > depth) {
+            popFrame();
+        }
+    }
+    
+    /**
+     * Run an action that has to happen on the server thread. When the script runs off the
+     * main thread the action is queued instead, and applied in order with the script's other
+     * effects on the next tick after the script finishes or pauses.
+     */
+    public void effect(Runnable effect) {
+        if (effects != null) {
+            effects.add(effect);
+        } else {
+            effect.run();
+        }
+    }
+    
+    /**
+     * @return Whether the script runs off the main thread and queues its effects
+     */
+    public boolean isBufferingEffects() {
+        return effects != null;
+    }
+    
+    void bufferEffects() {
+        this.effects = new ArrayList<>();
+    }
+    
+    /**
+     * @return The queued effects, in the order they were made
+     */
+    List<Runnable> drainEffects() {
+        List<Runnable> drained = effects;
+        effects = new ArrayList<>();
+        return drained;
+    }
+    
+    /**
+     * Take what the script may read of the server while it runs off the main thread: the
+     * player's world, the online players, and the player's permissions under the fixed names
+     * the running scripts check and every name checked before. Called on the main thread
+     * each time the script is handed to a virtual thread.
+     */
+    void snapshotServer() {
+        onlinePlayers = Bukkit.getOnlinePlayers().toArray();
+        onlineSet = null;
+        if (player == null) {
+            return;
+        }
+        
+        worldName = player.getWorld().getName();
+        if (permissions == null) {
+            permissions = new HashMap<>();
+        }
+        for (int i = 0; i < frameCount; i++) {
+            for (String permission : frames[i].script.permissions()) {
+                permissions.putIfAbsent(permission, false);
+            }
+        }
+        permissions.replaceAll((permission, granted) -> player.hasPermission(permission));
+    }
+    
+    /**
+     * Check a permission of the player. Off the main thread the answer comes from the
+     * snapshot; a name it does not have is checked on the main thread once, while the
+     * script waits.
+     */
+    public boolean hasPermission(String permission) {
+        if (effects == null || Bukkit.isPrimaryThread()) {
+            return player.hasPermission(permission);
+        }
+        
+        if (permissions == null) {
+            permissions = new HashMap<>();
+        }
+        Boolean granted = permissions.get(permission);
+        if (granted == null) {
+            granted = checkOnMainThread(permission);
+            permissions.put(permission, granted);
+        }
+        return granted;
+    }
+    
+    private boolean checkOnMainThread(String permission) {
+        if (!plugin.isEnabled()) {
+            return false;
+        }
+        
+        Player player = this.player;
+        try {
+            return Bukkit.getScheduler().callSyncMethod(plugin, () -> player.hasPermission(permission)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | RuntimeException e) {
+            // The plugin was disabled or the task cancelled while waiting
+            return false;
+        }
+    }
+    
+    /**
+     * @return The name of the player's world, as of the last snapshot off the main thread
+     */
+    public String getWorldName() {
+        if (effects == null || worldName == null) {
+            return player.getWorld().getName();
+        }
+        return worldName;
+    }
+    
+    /**
+     * @return The online players, as of the last snapshot off the main thread. The array
+     *         must not be modified.
+     */
+    Object[] getOnlinePlayers() {
+        if (effects == null || onlinePlayers == null) {
+            return Bukkit.getOnlinePlayers().toArray();
+        }
+        return onlinePlayers;
+    }
+    
+    /**
+     * @return The online player with the name, ignoring case, as of the last snapshot off the
+     *         main thread, or null if there is none
+     */
+    Player getOnlinePlayer(String name) {
+        if (effects == null || onlinePlayers == null) {
+            return Bukkit.getPlayerExact(name);
+        }
+        for (Object online : onlinePlayers) {
+            Player player = (Player) online;
+            if (player.getName().equalsIgnoreCase(name)) {
+                return player;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return Whether the player is online, as of the last snapshot off the main thread
+     */
+    boolean isOnline(Player player) {
+        if (effects == null || onlinePlayers == null) {
+            return player.isOnline();
+        }
+        if (onlineSet == null) {
+            onlineSet = new HashSet<>(Arrays.asList(onlinePlayers));
+        }
+        return onlineSet.contains(player);
+    }
+    
     public LinGUi getPlugin() {
         return plugin;
     }
+    
+    /**
+     * Map view over the slot storage, handed out by {@link #getVariables()}.
+     */
+    private final class VariableMap extends AbstractMap<String, Object> {
+        
+        @Override
+        public Object get(Object key) {
+            return key instanceof String ? getVariable((String) key) : null;
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+            detachOverlay();
+            int slot = SymbolTable.find((String) key);
+            if (slot >= 0) {
+                return hasVariable(slot);
+            }
+            return unslottedVariables != null && unslottedVariables.containsKey(key);
+        }
+        
+        @Override
+        public Object put(String key, Object value) {
+            Object previous = getVariable(key);
+            setVariable(key, value);
+            return previous;
+        }
+        
+        @Override
+        public Object remove(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            detachOverlay();
+            Object previous = getVariable((String) key);
+            int slot = SymbolTable.find((String) key);
+            if (slot >= 0) {
+                removeVariable(slot);
+            }
+            if (unslottedVariables != null) {
+                unslottedVariables.remove(key);
+            }
+            return previous;
+        }
+        
+        @Override
+        public int size() {
+            settleVariables();
+            int size = unslottedVariables != null ? unslottedVariables.size() : 0;
+            for (int slot = 0; slot < usedSlots; slot++) {
+                if (kinds[slot] != UNSET) {
+                    size++;
+                }
+            }
+            return size;
+        }
+        
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    settleVariables();
+                    return new VariableIterator();
+                }
+                
+                @Override
+                public int size() {
+                    return VariableMap.this.size();
+                }
+            };
+        }
+    }
+    
+    /**
+     * Bring the storage into one shape before it is walked: the overlay is copied in, and
+     * values stored before their name got a slot move into the slot unless it is already set.
+     */
+    private void settleVariables() {
+        detachOverlay();
+        if (unslottedVariables == null || unslottedVariables.isEmpty()) {
+            return;
+        }
+        Iterator<Map.Entry<String, Object>> iterator = unslottedVariables.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Object> entry = iterator.next();
+            int slot = SymbolTable.find(entry.getKey());
+            if (slot >= 0) {
+                iterator.remove();
+                if (slot >= usedSlots || kinds[slot] == UNSET) {
+                    setVariable(slot, entry.getValue());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Walks the set slots, then the variables under names that have no slot.
+     */
+    private final class VariableIterator implements Iterator<Map.Entry<String, Object>> {
+        
+        private int slot = -1;
+        private int nextSlot = -1;
+        private Iterator<Map.Entry<String, Object>> unslotted;
+        private boolean removable;
+        private boolean lastInSlot;
+        
+        @Override
+        public boolean hasNext() {
+            if (unslotted == null) {
+                if (nextSlot <= slot) {
+                    nextSlot = slot + 1;
+                    while (nextSlot < usedSlots && kinds[nextSlot] == UNSET) {
+                        nextSlot++;
+                    }
+                }
+                if (nextSlot < usedSlots) {
+                    return true;
+                }
+                if (unslottedVariables == null) {
+                    return false;
+                }
+                unslotted = unslottedVariables.entrySet().iterator();
+            }
+            return unslotted.hasNext();
+        }
+        
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            removable = true;
+            lastInSlot = unslotted == null;
+            if (lastInSlot) {
+                slot = nextSlot;
+                return new VariableEntry(SymbolTable.nameOf(slot), getVariable(slot));
+            }
+            Map.Entry<String, Object> entry = unslotted.next();
+            return new VariableEntry(entry.getKey(), entry.getValue());
+        }
+        
+        @Override
+        public void remove() {
+            if (!removable) {
+                throw new IllegalStateException();
+            }
+            removable = false;
+            if (lastInSlot) {
+                removeVariable(slot);
+            } else {
+                unslotted.remove();
+            }
+        }
+    }
+    
+    /**
+     * Entry of the variable map; setting its value sets the variable.
+     */
+    private final class VariableEntry extends AbstractMap.SimpleEntry<String, Object> {
+        
+        VariableEntry(String name, Object value) {
+            super(name, value);
+        }
+        
+        @Override
+        public Object setValue(Object value) {
+            setVariable(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+    
+    /**
+     * Position of one running compiled script. Included scripts push their own frame so
+     * a suspended include resumes where it left off and then returns to its caller.
+     * <p>
+     * Loops share one stack. A {@code loop} counts down; a {@code foreach} keeps its items
+     * next to the counter, which then holds the index of the next item.
+     */
+    static final class Frame {
+        CompiledScript script;
+        int instructionPointer;
+        private int[] loopCounters;
+        private Object[][] loopItems;
+        private int loopDepth;
+        
+        void start(CompiledScript script) {
+            this.script = script;
+            this.instructionPointer = 0;
+        }
+        
+        void finish() {
+            truncateLoops(0);
+            script = null;
+        }
+        
+        void pushLoop(int iterations) {
+            if (loopCounters == null) {
+                loopCounters = new int[4];
+                loopItems = new Object[4][];
+            } else if (loopDepth == loopCounters.length) {
+                loopCounters = Arrays.copyOf(loopCounters, loopDepth * 2);
+                loopItems = Arrays.copyOf(loopItems, loopDepth * 2);
+            }
+            loopCounters[loopDepth++] = iterations;
+        }
+        
+        void pushForEach(Object[] items) {
+            pushLoop(0);
+            loopItems[loopDepth - 1] = items;
+        }
+        
+        boolean hasNextItem() {
+            return loopCounters[loopDepth - 1] < loopItems[loopDepth - 1].length;
+        }
+        
+        Object nextItem() {
+            return loopItems[loopDepth - 1][loopCounters[loopDepth - 1]++];
+        }
+        
+        ForEachProgress forEachProgress() {
+            for (int i = loopDepth - 1; i >= 0; i--) {
+                if (loopItems[i] != null) {
+                    // The counter is past the item the body is working on
+                    return new ForEachProgress(Math.max(0, loopCounters[i] - 1), loopItems[i].length);
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Count down the innermost loop.
+         *
+         * @return The iterations left after this one
+         */
+        int countDownLoop() {
+            return --loopCounters[loopDepth - 1];
+        }
+        
+        void popLoop() {
+            loopItems[--loopDepth] = null;
+        }
+        
+        int loopDepth() {
+            return loopDepth;
+        }
+        
+        /**
+         * Drop the loops above the given depth, e.g. those a returning function was in.
+         */
+        void truncateLoops(int depth) {
+            while (loopDepth > depth) {
+                popLoop();
+            }
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,47 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.entity.Player;
+import ru.c0rex86.lingui.LinGUi;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+
+/**
+ * Contexts of finished runs, kept per thread for the next run. Nested runs each take
+ * their own context, so a few per thread are enough.
+ */
+final class ScriptContextPool {
+    
+    private static final int MAX_PER_THREAD = 4;
+    
+    private final LinGUi plugin;
+    private final ThreadLocal<ArrayDeque<ScriptContext>> free = ThreadLocal.withInitial(ArrayDeque::new);
+    
+    ScriptContextPool(LinGUi plugin) {
+        this.plugin = plugin;
+    }
+    
+    ScriptContext acquire(Player player, Map<String, Object> variables, ScriptLimits limits) {
+        ScriptContext context = free.get().poll();
+        if (context == null) {
+            context = new ScriptContext(player, plugin, limits);
+        }
+        context.reset(player, variables, limits);
+        return context;
+    }
+    
+    /**
+     * Take a context back once its run is over. Contexts that still have work, a pending
+     * resume or a batch of effects, are left to the garbage collector instead.
+     */
+    void release(ScriptContext context) {
+        if (context.isSuspended() || context.isBufferingEffects() || context.getFrameCount() > 0) {
+            return;
+        }
+        ArrayDeque<ScriptContext> contexts = free.get();
+        if (contexts.size() < MAX_PER_THREAD) {
+            context.clear();
+            contexts.push(context);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ru.c0rex86.lingui.script;
+
+/**
+ * A script compiled for one owner, such as a GUI item, and kept outside the compile cache
+ * so its run count and compiled steps survive however many other scripts are cached. It
+ * compiles again only after the function table has changed.
+ */
+public final class ScriptHandle {
+    
+    private final ScriptManagerImpl manager;
+    private final String source;
+    private volatile Compiled compiled;
+    
+    ScriptHandle(ScriptManagerImpl manager, String source) {
+        this.manager = manager;
+        this.source = source;
+    }
+    
+    private static final class Compiled {
+        final int version;
+        final CompiledScript script;
+        // Reported on every run until the function table changes, instead of compiling again
+        final IllegalArgumentException error;
+        
+        Compiled(int version, CompiledScript script, IllegalArgumentException error) {
+            this.version = version;
+            this.script = script;
+            this.error = error;
+        }
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * @return The script compiled against the current function table
+     * @throws IllegalArgumentException If the script does not compile
+     */
+    public CompiledScript get() {
+        Compiled current = compiled;
+        int version = manager.getFunctionVersion();
+        if (current == null || current.version != version) {
+            try {
+                current = new Compiled(version, manager.compileUncached(source), null);
+            } catch (IllegalArgumentException e) {
+                current = new Compiled(version, null, e);
+            }
+            compiled = current;
+        }
+        if (current.error != null) {
+            throw current.error;
+        }
+        return current.script;
+    }
+}
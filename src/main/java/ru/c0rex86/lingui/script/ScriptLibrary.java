@@ -0,0 +1,259 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import ru.c0rex86.lingui.LinGUi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Compiled copies of the scripts in the plugin's {@code scripts/} folder, loaded once at
+ * startup so {@code include} never touches the disk. Includes with a fixed name are bound
+ * to an {@link Entry} when the including script compiles; the entry is updated in place
+ * when its file changes, so including scripts pick up the new version without recompiling.
+ */
+public class ScriptLibrary {
+    
+    private static final String EXTENSION = ".script";
+    
+    private final LinGUi plugin;
+    private final ScriptCompiler compiler;
+    private final File directory;
+    private final Map<String, Entry> entries;
+    // Set when the function table changed and the scripts still hold the old functions
+    private final AtomicBoolean stale;
+    private BukkitTask refreshTask;
+    
+    ScriptLibrary(LinGUi plugin, ScriptCompiler compiler) {
+        this.plugin = plugin;
+        this.compiler = compiler;
+        this.directory = new File(plugin.getDataFolder(), "scripts");
+        this.entries = new ConcurrentHashMap<>();
+        this.stale = new AtomicBoolean();
+    }
+    
+    /**
+     * A named script in the library. The script is null while no file with that name exists
+     * or the file does not compile.
+     */
+    public static final class Entry {
+        private final String name;
+        private volatile CompiledScript script;
+        private long lastModified;
+        
+        private Entry(String name) {
+            this.name = name;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public CompiledScript getScript() {
+            return script;
+        }
+    }
+    
+    /**
+     * Compile every script in the folder, replacing whatever was loaded before.
+     */
+    public synchronized void load() {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        
+        stale.set(false);
+        for (Entry entry : entries.values()) {
+            entry.lastModified = -1;
+        }
+        refresh();
+    }
+    
+    /**
+     * Recompile scripts whose files changed since they were loaded and drop deleted ones.
+     */
+    public synchronized void refresh() {
+        Map<String, File> files = scan();
+        boolean changed = false;
+        
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            Entry entry = reference(file.getKey());
+            long lastModified = file.getValue().lastModified();
+            if (entry.lastModified != lastModified) {
+                entry.lastModified = lastModified;
+                entry.script = compile(file.getKey(), file.getValue());
+                changed = true;
+            }
+        }
+        
+        for (Entry entry : entries.values()) {
+            if (!files.containsKey(entry.name) && (entry.script != null || entry.lastModified != 0)) {
+                entry.lastModified = 0;
+                entry.script = null;
+                changed = true;
+            }
+        }
+        
+        if (changed) {
+            reportCycles();
+        }
+    }
+    
+    /**
+     * Have every loaded script compiled again after the function table changed. A burst of
+     * changes, such as a plugin registering its functions at startup, costs one recompile:
+     * on the next tick, or on the next lookup if that comes first.
+     */
+    public void invalidate() {
+        if (stale.compareAndSet(false, true) && plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, this::recompileIfStale);
+        }
+    }
+    
+    private void recompileIfStale() {
+        if (stale.getAndSet(false)) {
+            recompile();
+        }
+    }
+    
+    /**
+     * Compile every loaded script again from its cached source.
+     */
+    public synchronized void recompile() {
+        for (Entry entry : entries.values()) {
+            CompiledScript script = entry.script;
+            if (script != null) {
+                try {
+                    entry.script = compiler.compile(script.getSource());
+                } catch (IllegalArgumentException e) {
+                    plugin.getLogger().warning("Invalid script " + entry.name + ": " + e.getMessage());
+                    entry.script = null;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Check the folder for changes every {@code intervalSeconds} on an async task.
+     */
+    public void startWatching(long intervalSeconds) {
+        stopWatching();
+        if (intervalSeconds > 0) {
+            long ticks = intervalSeconds * 20;
+            refreshTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::refresh, ticks, ticks);
+        }
+    }
+    
+    public void stopWatching() {
+        if (refreshTask != null) {
+            refreshTask.cancel();
+            refreshTask = null;
+        }
+    }
+    
+    /**
+     * @return The compiled script with this name, or null if there is none
+     */
+    public CompiledScript getScript(String name) {
+        recompileIfStale();
+        Entry entry = entries.get(name);
+        return entry != null ? entry.script : null;
+    }
+    
+    public Set<String> getScriptNames() {
+        Set<String> names = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            if (entry.script != null) {
+                names.add(entry.name);
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * The entry for a name, created empty if the script does not exist yet.
+     */
+    Entry reference(String name) {
+        return entries.computeIfAbsent(name, Entry::new);
+    }
+    
+    private CompiledScript compile(String name, File file) {
+        try {
+            return compiler.compile(Files.readString(file.toPath()));
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not read script " + name + ": " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Invalid script " + name + ": " + e.getMessage());
+        }
+        return null;
+    }
+    
+    /**
+     * @return The script files by name, i.e. their path below the folder without the extension
+     */
+    private Map<String, File> scan() {
+        Map<String, File> files = new HashMap<>();
+        if (!directory.isDirectory()) {
+            return files;
+        }
+        
+        Path root = directory.toPath();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(path -> path.toString().endsWith(EXTENSION) && Files.isRegularFile(path))
+                    .forEach(path -> {
+                        String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+                        files.put(name.substring(0, name.length() - EXTENSION.length()), path.toFile());
+                    });
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not scan the scripts folder: " + e.getMessage());
+        }
+        return files;
+    }
+    
+    /**
+     * Log every include cycle between library scripts. Cycles are not fatal here: running
+     * one fails when the same script is included while it is already on the stack.
+     */
+    private void reportCycles() {
+        Set<String> done = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            findCycles(entry, new ArrayList<>(), done);
+        }
+    }
+    
+    private void findCycles(Entry entry, List<String> path, Set<String> done) {
+        CompiledScript script = entry.script;
+        if (script == null || done.contains(entry.name)) {
+            return;
+        }
+        
+        int index = path.indexOf(entry.name);
+        if (index >= 0) {
+            List<String> cycle = new ArrayList<>(path.subList(index, path.size()));
+            cycle.add(entry.name);
+            plugin.getLogger().warning("Include cycle in scripts: " + String.join(" -> ", cycle));
+            return;
+        }
+        
+        path.add(entry.name);
+        for (Instruction instruction : script.instructions()) {
+            if (instruction.opcode == Opcode.INCLUDE && instruction.include != null) {
+                findCycles(instruction.include, path, done);
+            }
+        }
+        path.remove(path.size() - 1);
+        done.add(entry.name);
+    }
+}
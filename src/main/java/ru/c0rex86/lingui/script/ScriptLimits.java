@@ -0,0 +1,31 @@
+package ru.c0rex86.lingui.script;
+
+import ru.c0rex86.lingui.LinGUi;
+
+/**
+ * The {@code script.*} limits of the config, read once instead of on every command.
+ */
+final class ScriptLimits {
+    
+    static final ScriptLimits DEFAULTS = new ScriptLimits(10, 1000, 1000);
+    
+    final int maxCommands;
+    final int maxLoopIterations;
+    final long timeout;
+    
+    private ScriptLimits(int maxCommands, int maxLoopIterations, long timeout) {
+        this.maxCommands = maxCommands;
+        this.maxLoopIterations = maxLoopIterations;
+        this.timeout = timeout;
+    }
+    
+    static ScriptLimits load(LinGUi plugin) {
+        if (plugin == null) {
+            return DEFAULTS;
+        }
+        return new ScriptLimits(
+                plugin.getConfig().getInt("script.max-commands", DEFAULTS.maxCommands),
+                plugin.getConfig().getInt("script.max-loop-iterations", DEFAULTS.maxLoopIterations),
+                plugin.getConfig().getLong("script.timeout", DEFAULTS.timeout));
+    }
+}
@@ -4,59 +4,124 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import ru.c0rex86.lingui.LinGUi;
 import ru.c0rex86.lingui.api.ScriptManager;
+import ru.c0rex86.lingui.api.ScriptSignature;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ScriptManagerImpl implements ScriptManager {
     
+    private static final int DEFAULT_CACHE_SIZE = 256;
+    private static final int MAX_CACHED_CONDITIONS = 512;
+    private static final int DEFAULT_COMPILE_THRESHOLD = 50;
+    private static final int DEFAULT_MAX_INCLUDE_DEPTH = 8;
+    private static final int DEFAULT_LIBRARY_REFRESH_INTERVAL = 5;
+    private static final int DEFAULT_FOREACH_TICK_BUDGET = 2000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+    private static final ScriptSignature TITLE_SIGNATURE = ScriptSignature.optional(1,
+            ScriptSignature.Type.STRING, ScriptSignature.Type.INT, ScriptSignature.Type.INT, ScriptSignature.Type.INT);
+    private static final ScriptSignature SOUND_SIGNATURE = ScriptSignature.optional(1,
+            ScriptSignature.Type.SOUND, ScriptSignature.Type.DOUBLE, ScriptSignature.Type.DOUBLE);
+    private static final ScriptSignature PARTICLE_SIGNATURE = ScriptSignature.optional(1, ScriptSignature.Type.PARTICLE,
+            ScriptSignature.Type.INT, ScriptSignature.Type.DOUBLE, ScriptSignature.Type.DOUBLE, ScriptSignature.Type.DOUBLE);
+    private static final ScriptSignature FIREWORK_SIGNATURE = ScriptSignature.optional(0,
+            ScriptSignature.Type.STRING, ScriptSignature.Type.FIREWORK_TYPE);
+    
+    /**
+     * How compiled scripts are executed.
+     */
+    public enum ExecutionTier {
+        /** Interpret scripts and compile those that run often in the background */
+        AUTO,
+        /** Always interpret */
+        INTERPRETED,
+        /** Compile every script before its first run */
+        COMPILED
+    }
+    
     private final LinGUi plugin;
     private final Map<String, ScriptFunction> functions;
-    
-    // Basic command patterns
-    private static final Pattern COMMAND_PATTERN = Pattern.compile("cmd:\\s*([^\\{\\}]+)(?:\\{([^\\}]+)\\})?(.*)");
-    private static final Pattern OPEN_GUI_PATTERN = Pattern.compile("open:\\s*([^\\s]+)(?:\\s+([^\\s]+))?");
-    private static final Pattern CLOSE_GUI_PATTERN = Pattern.compile("close");
-    private static final Pattern MESSAGE_PATTERN = Pattern.compile("msg:\\s*(.+)");
-    private static final Pattern CONSOLE_PATTERN = Pattern.compile("console:\\s*(.+)");
-    private static final Pattern PERMISSION_PATTERN = Pattern.compile("perm:\\s*(.+)");
-    
-    // Advanced patterns
-    private static final Pattern IF_PATTERN = Pattern.compile("if\\s+(.+)");
-    private static final Pattern ELSE_PATTERN = Pattern.compile("else");
-    private static final Pattern ENDIF_PATTERN = Pattern.compile("endif");
-    private static final Pattern LOOP_PATTERN = Pattern.compile("loop\\s+(\\d+)");
-    private static final Pattern ENDLOOP_PATTERN = Pattern.compile("endloop");
-    private static final Pattern BREAK_PATTERN = Pattern.compile("break");
-    private static final Pattern CONTINUE_PATTERN = Pattern.compile("continue");
-    private static final Pattern SET_PATTERN = Pattern.compile("set\\s+([a-zA-Z0-9_]+)\\s+(.+)");
-    private static final Pattern MATH_PATTERN = Pattern.compile("math\\s+([a-zA-Z0-9_]+)\\s+([+\\-*/])\\s+(.+)");
-    private static final Pattern DELAY_PATTERN = Pattern.compile("delay\\s+(\\d+)");
-    private static final Pattern RANDOM_PATTERN = Pattern.compile("random\\s+([a-zA-Z0-9_]+)\\s+(\\d+)\\s+(\\d+)");
-    
-    // Comparison patterns
-    private static final Pattern EQUALS_PATTERN = Pattern.compile("(.+)\\s+==\\s+(.+)");
-    private static final Pattern NOT_EQUALS_PATTERN = Pattern.compile("(.+)\\s+!=\\s+(.+)");
-    private static final Pattern GREATER_PATTERN = Pattern.compile("(.+)\\s+>\\s+(.+)");
-    private static final Pattern LESS_PATTERN = Pattern.compile("(.+)\\s+<\\s+(.+)");
-    private static final Pattern GREATER_EQUALS_PATTERN = Pattern.compile("(.+)\\s+>=\\s+(.+)");
-    private static final Pattern LESS_EQUALS_PATTERN = Pattern.compile("(.+)\\s+<=\\s+(.+)");
-    
-    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{([^\\}]+)\\}");
+    private final ScriptCompiler compiler;
+    private final Map<String, CompiledScript> compiledScripts;
+    private final Set<ScriptContext> suspendedScripts;
+    private final Map<String, Condition> conditionCache;
+    private final StepCompiler stepCompiler;
+    private final int compileThreshold;
+    private final int maxIncludeDepth;
+    private final long foreachBudgetNanos;
+    private final ScriptLibrary library;
+    private final ExecutorService asyncExecutor;
+    // Contexts running on a virtual thread, cancelled if they outlast the shutdown timeout
+    private final Set<ScriptContext> runningAsync;
+    private volatile boolean shuttingDown;
+    private final ScriptContextPool contextPool;
+    // Bumped whenever the function table changes, so script handles know to compile again
+    private final AtomicInteger functionVersion;
+    private volatile ScriptLimits limits;
+    // Functions registered by other plugins may touch the server, so off the main thread
+    // they run as effects; the built-ins registered before this is set queue their own
+    private boolean defaultsRegistered;
+    private volatile ExecutionTier executionTier;
+    // Null unless profiling, so the interpreter loop pays only a null check
+    private volatile ScriptProfiler profiler;
+    private ScriptProfiler lastProfiler;
     
     public ScriptManagerImpl(LinGUi plugin) {
         this.plugin = plugin;
         this.functions = new ConcurrentHashMap<>();
+        this.compiler = new ScriptCompiler(functions);
+        this.library = new ScriptLibrary(plugin, compiler);
+        compiler.setLibrary(library);
+        this.suspendedScripts = ConcurrentHashMap.newKeySet();
+        this.conditionCache = new ConcurrentHashMap<>();
+        this.compileThreshold = Math.max(1, plugin.getConfig().getInt("script.compile-threshold", DEFAULT_COMPILE_THRESHOLD));
+        this.maxIncludeDepth = plugin.getConfig().getInt("script.max-include-depth", DEFAULT_MAX_INCLUDE_DEPTH);
+        this.foreachBudgetNanos = Math.max(1, plugin.getConfig().getLong("script.foreach-tick-budget",
+                DEFAULT_FOREACH_TICK_BUDGET)) * 1000;
+        this.stepCompiler = new StepCompiler(functions, this::executeInstruction, foreachBudgetNanos);
+        this.limits = ScriptLimits.load(plugin);
+        this.contextPool = new ScriptContextPool(plugin);
+        this.functionVersion = new AtomicInteger();
+        
+        String tier = plugin.getConfig().getString("script.execution-tier", "auto");
+        try {
+            this.executionTier = ExecutionTier.valueOf(tier.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Unknown script.execution-tier '" + tier + "', using auto");
+            this.executionTier = ExecutionTier.AUTO;
+        }
+        
+        int cacheSize = plugin.getConfig().getInt("script.cache-size", DEFAULT_CACHE_SIZE);
+        this.compiledScripts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        
+        this.asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.runningAsync = ConcurrentHashMap.newKeySet();
         
         registerDefaultFunctions();
+        defaultsRegistered = true;
+        
+        library.load();
+        library.startWatching(plugin.getConfig().getLong("script.library-refresh-interval", DEFAULT_LIBRARY_REFRESH_INTERVAL));
     }
     
     private void registerDefaultFunctions() {
@@ -65,11 +130,8 @@ public class ScriptManagerImpl implements ScriptManager {
             if (args.length < 1) return false;
             
             String command = String.valueOf(args[0]);
-            Player player = context.getPlayer();
-            
             command = replacePlaceholders(command, context);
-            context.incrementCommandCount();
-            return player.performCommand(command);
+            return Effects.command(context, command);
         });
         
         // GUI operations
@@ -77,17 +139,12 @@ public class ScriptManagerImpl implements ScriptManager {
             if (args.length < 1) return false;
             
             String guiId = String.valueOf(args[0]);
-            Player target = args.length > 1 ? Bukkit.getPlayerExact(String.valueOf(args[1])) : context.getPlayer();
-            
-            if (target == null) return false;
-            
-            context.incrementCommandCount();
-            return context.getPlugin().getGuiManager().openGui(target, guiId);
+            return Effects.openGui(context, guiId, args.length > 1 ? String.valueOf(args[1]) : null);
         });
         
         registerScriptFunction("close", (context, args) -> {
             context.incrementCommandCount();
-            return context.getPlugin().getGuiManager().closeGui(context.getPlayer());
+            return Effects.closeGui(context);
         });
         
         // Player messaging
@@ -96,31 +153,27 @@ public class ScriptManagerImpl implements ScriptManager {
             
             String message = String.valueOf(args[0]);
             message = replacePlaceholders(message, context);
-            
-            context.getPlayer().sendMessage(message);
-            return true;
+            return Effects.message(context, message);
         });
         
         // Console commands
         registerScriptFunction("console", (context, args) -> {
             if (args.length < 1) return false;
             if (!context.getPlugin().getConfig().getBoolean("script.allow-console-commands", true)) {
-                context.getPlayer().sendMessage("§cConsole commands are disabled in the configuration.");
+                Effects.message(context, "§cConsole commands are disabled in the configuration.");
                 return false;
             }
             
             String command = String.valueOf(args[0]);
             command = replacePlaceholders(command, context);
-            
-            context.incrementCommandCount();
-            return Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+            return Effects.console(context, command);
         });
         
         // Permission check
         registerScriptFunction("perm", (context, args) -> {
             if (args.length < 1) return false;
             String permission = String.valueOf(args[0]);
-            return context.getPlayer().hasPermission(permission);
+            return context.hasPermission(permission);
         });
         
         // Variable operations
@@ -147,6 +200,15 @@ public class ScriptManagerImpl implements ScriptManager {
             String valueStr = String.valueOf(args[2]);
             valueStr = replacePlaceholders(valueStr, context);
             
+            if (GlobalVariables.isGlobal(varName) && operator.length() == 1 && "+-*/".contains(operator)) {
+                try {
+                    GlobalVariables.cell(varName).apply(operator.charAt(0), Double.parseDouble(valueStr));
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            
             try {
                 double currentValue = 0;
                 if (context.getVariable(varName) != null) {
@@ -188,18 +250,16 @@ public class ScriptManagerImpl implements ScriptManager {
             if (args.length < 3) return false;
             
             String varName = String.valueOf(args[0]);
-            String minStr = String.valueOf(args[1]);
-            String maxStr = String.valueOf(args[2]);
             
             try {
-                int min = Integer.parseInt(minStr);
-                int max = Integer.parseInt(maxStr);
+                int min = intArg(args, 1, 0);
+                int max = intArg(args, 2, 0);
                 
                 if (min >= max) {
                     return false;
                 }
                 
-                int random = min + (int) (Math.random() * (max - min + 1));
+                int random = ThreadLocalRandom.current().nextInt(min, max + 1);
                 context.setVariable(varName, random);
                 return true;
             } catch (NumberFormatException e) {
@@ -207,95 +267,100 @@ public class ScriptManagerImpl implements ScriptManager {
             }
         });
         
-        // Delay execution
-        registerScriptFunction("delay", (context, args) -> {
-            if (args.length < 1) return false;
+        // Atomic compare-and-set of a global variable: cas global.name expected new [result]
+        registerScriptFunction("cas", (context, args) -> {
+            if (args.length < 3) return false;
             
-            try {
-                long delay = Long.parseLong(String.valueOf(args[0]));
-                if (delay <= 0) return true;
-                
-                if (delay > 10000) {
-                    delay = 10000; // Maximum 10 seconds
-                }
-                
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-                
-                return true;
-            } catch (NumberFormatException e) {
-                return false;
+            String varName = String.valueOf(args[0]);
+            if (!GlobalVariables.isGlobal(varName)) return false;
+            
+            boolean swapped = GlobalVariables.cell(varName).compareAndSet(args[1], args[2]);
+            if (args.length > 3) {
+                context.setVariable(String.valueOf(args[3]), swapped);
             }
+            return swapped;
         });
         
-        // Load and execute another script
-        registerScriptFunction("include", (context, args) -> {
-            if (args.length < 1) return false;
+        // Saved per-player variables: persist name... / load name...
+        registerScriptFunction("persist", (context, args) -> {
+            PlayerVariableStore store = plugin.getPlayerVariableStore();
+            if (args.length < 1 || store == null) return false;
             
-            String scriptName = String.valueOf(args[0]);
-            scriptName = replacePlaceholders(scriptName, context);
+            UUID playerId = context.getPlayer().getUniqueId();
+            for (Object arg : args) {
+                String name = String.valueOf(arg);
+                Object value = context.getVariable(name);
+                if (value != null) {
+                    store.set(playerId, name, value.toString());
+                } else {
+                    store.remove(playerId, name);
+                }
+            }
+            return true;
+        });
+        
+        registerScriptFunction("load", (context, args) -> {
+            PlayerVariableStore store = plugin.getPlayerVariableStore();
+            if (args.length < 1 || store == null) return false;
             
-            File scriptFile = new File(plugin.getDataFolder(), "scripts/" + scriptName + ".script");
-            if (!scriptFile.exists()) {
-                return false;
+            UUID playerId = context.getPlayer().getUniqueId();
+            if (!store.isLoaded(playerId)) {
+                // The log is read in the background, run this line again next tick
+                return context.retryAfter(50);
             }
             
-            try {
-                String scriptContent = Files.readString(scriptFile.toPath());
-                executeScript(scriptContent, context);
-                return true;
-            } catch (IOException e) {
-                return false;
+            boolean found = true;
+            for (Object arg : args) {
+                String name = String.valueOf(arg);
+                String value = store.get(playerId, name);
+                if (value != null) {
+                    context.setVariable(name, value);
+                } else {
+                    found = false;
+                }
             }
+            return found;
         });
         
-        // Звуковые эффекты
-        registerScriptFunction("sound", (context, args) -> {
+        // Delay execution. The script is suspended and resumed from the scheduler,
+        // so the server thread never sleeps.
+        registerScriptFunction("delay", (context, args) -> {
             if (args.length < 1) return false;
             
-            String soundName = String.valueOf(args[0]);
-            float volume = args.length > 1 ? Float.parseFloat(String.valueOf(args[1])) : 1.0f;
-            float pitch = args.length > 2 ? Float.parseFloat(String.valueOf(args[2])) : 1.0f;
-            
             try {
-                Player player = context.getPlayer();
-                org.bukkit.Sound sound = org.bukkit.Sound.valueOf(soundName.toUpperCase());
-                player.playSound(player.getLocation(), sound, volume, pitch);
+                long delay = longArg(args, 0, 0);
+                if (delay <= 0) return true;
+                
+                if (delay > 10000) {
+                    delay = 10000; // Maximum 10 seconds
+                }
+                
+                context.suspend(delay);
                 return true;
-            } catch (IllegalArgumentException e) {
-                context.getPlayer().sendMessage("§cНеизвестный звук: " + soundName);
+            } catch (NumberFormatException e) {
                 return false;
             }
         });
         
+        // Звуковые эффекты
+        registerScriptFunction("sound", SOUND_SIGNATURE, (context, args) -> {
+            Player player = context.getPlayer();
+            org.bukkit.Sound sound = args.getSound(0);
+            float volume = (float) args.getDouble(1, 1.0);
+            float pitch = (float) args.getDouble(2, 1.0);
+            context.effect(() -> player.playSound(player.getLocation(), sound, volume, pitch));
+            return true;
+        });
+        
         // Визуальные заголовки
-        registerScriptFunction("title", (context, args) -> {
-            if (args.length < 1) return false;
-            
-            String title = String.valueOf(args[0]);
-            int fadeIn = args.length > 1 ? Integer.parseInt(String.valueOf(args[1])) : 10;
-            int stay = args.length > 2 ? Integer.parseInt(String.valueOf(args[2])) : 70;
-            int fadeOut = args.length > 3 ? Integer.parseInt(String.valueOf(args[3])) : 20;
-            
-            title = replacePlaceholders(title, context);
-            context.getPlayer().sendTitle(title, "", fadeIn, stay, fadeOut);
+        registerScriptFunction("title", TITLE_SIGNATURE, (context, args) -> {
+            sendTitle(context, args.getString(0), "", args);
             return true;
         });
         
         // Подзаголовки
-        registerScriptFunction("subtitle", (context, args) -> {
-            if (args.length < 1) return false;
-            
-            String subtitle = String.valueOf(args[0]);
-            int fadeIn = args.length > 1 ? Integer.parseInt(String.valueOf(args[1])) : 10;
-            int stay = args.length > 2 ? Integer.parseInt(String.valueOf(args[2])) : 70;
-            int fadeOut = args.length > 3 ? Integer.parseInt(String.valueOf(args[3])) : 20;
-            
-            subtitle = replacePlaceholders(subtitle, context);
-            context.getPlayer().sendTitle("", subtitle, fadeIn, stay, fadeOut);
+        registerScriptFunction("subtitle", TITLE_SIGNATURE, (context, args) -> {
+            sendTitle(context, "", args.getString(0), args);
             return true;
         });
         
@@ -304,431 +369,777 @@ public class ScriptManagerImpl implements ScriptManager {
             if (args.length < 1) return false;
             
             String message = String.valueOf(args[0]);
-            message = replacePlaceholders(message, context);
+            String text = replacePlaceholders(message, context);
             
-            try {
-                // Используем современный API для actionbar
-                context.getPlayer().spigot().sendMessage(
-                    net.md_5.bungee.api.ChatMessageType.ACTION_BAR,
-                    net.md_5.bungee.api.chat.TextComponent.fromLegacyText(message)[0]
-                );
-                return true;
-            } catch (Exception e) {
-                context.getPlayer().sendMessage(message); // Запасной вариант
-                return false;
-            }
+            context.effect(() -> {
+                try {
+                    // Используем современный API для actionbar
+                    context.getPlayer().spigot().sendMessage(
+                        net.md_5.bungee.api.ChatMessageType.ACTION_BAR,
+                        net.md_5.bungee.api.chat.TextComponent.fromLegacyText(text)[0]
+                    );
+                } catch (Exception e) {
+                    context.getPlayer().sendMessage(text); // Запасной вариант
+                }
+            });
+            return true;
         });
         
         // Эффекты частиц
-        registerScriptFunction("particle", (context, args) -> {
-            if (args.length < 1) return false;
-            
-            String particleName = String.valueOf(args[0]);
-            int count = args.length > 1 ? Integer.parseInt(String.valueOf(args[1])) : 10;
-            double offsetX = args.length > 2 ? Double.parseDouble(String.valueOf(args[2])) : 0.5;
-            double offsetY = args.length > 3 ? Double.parseDouble(String.valueOf(args[3])) : 0.5;
-            double offsetZ = args.length > 4 ? Double.parseDouble(String.valueOf(args[4])) : 0.5;
+        registerScriptFunction("particle", PARTICLE_SIGNATURE, (context, args) -> {
+            Player player = context.getPlayer();
+            org.bukkit.Particle particle = args.getParticle(0);
+            int count = args.getInt(1, 10);
+            double offsetX = args.getDouble(2, 0.5);
+            double offsetY = args.getDouble(3, 0.5);
+            double offsetZ = args.getDouble(4, 0.5);
             
-            try {
-                Player player = context.getPlayer();
-                org.bukkit.Particle particle = org.bukkit.Particle.valueOf(particleName.toUpperCase());
-                player.getWorld().spawnParticle(
-                    particle,
-                    player.getLocation().add(0, 1, 0), // На уровне головы
-                    count,
-                    offsetX, offsetY, offsetZ,
-                    0.1 // Скорость
-                );
-                return true;
-            } catch (IllegalArgumentException e) {
-                context.getPlayer().sendMessage("§cНеизвестный эффект частиц: " + particleName);
-                return false;
-            }
+            context.effect(() -> player.getWorld().spawnParticle(
+                particle,
+                player.getLocation().add(0, 1, 0), // На уровне головы
+                count,
+                offsetX, offsetY, offsetZ,
+                0.1 // Скорость
+            ));
+            return true;
         });
         
         // Фейерверк
-        registerScriptFunction("firework", (context, args) -> {
-            try {
-                Player player = context.getPlayer();
-                org.bukkit.entity.Firework firework = player.getWorld().spawn(
-                    player.getLocation(), 
-                    org.bukkit.entity.Firework.class
-                );
-                
-                org.bukkit.inventory.meta.FireworkMeta meta = firework.getFireworkMeta();
-                meta.setPower(1); // Высота взрыва
-                
-                // Цвета
-                org.bukkit.Color color1 = org.bukkit.Color.RED;
-                org.bukkit.Color color2 = org.bukkit.Color.BLUE;
-                
-                if (args.length > 0) {
-                    String colorName = String.valueOf(args[0]);
-                    if (colorName.equalsIgnoreCase("random")) {
-                        java.util.Random rand = new java.util.Random();
-                        color1 = org.bukkit.Color.fromRGB(rand.nextInt(255), rand.nextInt(255), rand.nextInt(255));
-                        color2 = org.bukkit.Color.fromRGB(rand.nextInt(255), rand.nextInt(255), rand.nextInt(255));
-                    }
-                }
-                
-                org.bukkit.FireworkEffect effect = org.bukkit.FireworkEffect.builder()
-                    .withColor(color1, color2)
-                    .with(org.bukkit.FireworkEffect.Type.BALL_LARGE)
-                    .withTrail()
-                    .withFlicker()
-                    .build();
-                
-                meta.addEffect(effect);
-                firework.setFireworkMeta(meta);
-                
-                return true;
-            } catch (Exception e) {
-                return false;
+        registerScriptFunction("firework", FIREWORK_SIGNATURE, (context, args) -> {
+            // Цвета
+            org.bukkit.Color color1 = org.bukkit.Color.RED;
+            org.bukkit.Color color2 = org.bukkit.Color.BLUE;
+            
+            if ("random".equalsIgnoreCase(args.getString(0, null))) {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                color1 = org.bukkit.Color.fromRGB(rand.nextInt(255), rand.nextInt(255), rand.nextInt(255));
+                color2 = org.bukkit.Color.fromRGB(rand.nextInt(255), rand.nextInt(255), rand.nextInt(255));
             }
+            
+            org.bukkit.FireworkEffect effect = org.bukkit.FireworkEffect.builder()
+                .withColor(color1, color2)
+                .with(args.getFireworkType(1, org.bukkit.FireworkEffect.Type.BALL_LARGE))
+                .withTrail()
+                .withFlicker()
+                .build();
+            
+            Player player = context.getPlayer();
+            context.effect(() -> {
+                try {
+                    org.bukkit.entity.Firework firework = player.getWorld().spawn(
+                        player.getLocation(), 
+                        org.bukkit.entity.Firework.class
+                    );
+                    
+                    org.bukkit.inventory.meta.FireworkMeta meta = firework.getFireworkMeta();
+                    meta.setPower(1); // Высота взрыва
+                    meta.addEffect(effect);
+                    firework.setFireworkMeta(meta);
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Failed to launch firework: " + e.getMessage());
+                }
+            });
+            return true;
         });
         
         // Дополнительные функции игрока
-        registerScriptFunction("heal", (context, args) -> {
-            double amount = args.length > 0 ? Double.parseDouble(String.valueOf(args[0])) : 20.0;
+        registerScriptFunction("heal", ScriptSignature.optional(0, ScriptSignature.Type.DOUBLE), (context, args) -> {
+            double amount = args.getDouble(0, 20.0);
             Player player = context.getPlayer();
             
-            double newHealth = Math.min(player.getHealth() + amount, player.getMaxHealth());
-            player.setHealth(newHealth);
+            context.effect(() -> player.setHealth(Math.min(player.getHealth() + amount, player.getMaxHealth())));
             return true;
         });
         
-        registerScriptFunction("feed", (context, args) -> {
-            int amount = args.length > 0 ? Integer.parseInt(String.valueOf(args[0])) : 20;
+        registerScriptFunction("feed", ScriptSignature.optional(0, ScriptSignature.Type.INT), (context, args) -> {
+            int amount = args.getInt(0, 20);
             Player player = context.getPlayer();
             
-            int newFoodLevel = Math.min(player.getFoodLevel() + amount, 20);
-            player.setFoodLevel(newFoodLevel);
+            context.effect(() -> player.setFoodLevel(Math.min(player.getFoodLevel() + amount, 20)));
             return true;
         });
     }
     
     @Override
     public ScriptResult executeScript(String scriptContent, Player player, Map<String, Object> variables) {
-        return executeScript(scriptContent, createContext(player, variables));
+        CompiledScript script;
+        try {
+            script = compile(scriptContent);
+        } catch (Exception e) {
+            return ScriptResult.failure(e);
+        }
+        return execute(script, player, variables);
+    }
+    
+    /**
+     * Runs in a pooled context that reads the variables in place, so nothing is copied
+     * or allocated for the context itself.
+     */
+    @Override
+    public ScriptResult execute(CompiledScript script, Player player, Map<String, Object> variables) {
+        ScriptContext context = contextPool.acquire(player, variables, limits);
+        try {
+            return execute(script, context);
+        } finally {
+            contextPool.release(context);
+        }
     }
     
     @Override
     public ScriptResult executeScript(String scriptContent, ScriptContext context) {
+        CompiledScript script;
+        try {
+            script = compile(scriptContent);
+        } catch (Exception e) {
+            return ScriptResult.failure(e);
+        }
+        return execute(script, context);
+    }
+    
+    @Override
+    public CompiledScript compile(String scriptContent) {
+        if (scriptContent == null) {
+            throw new IllegalArgumentException("Script content cannot be null");
+        }
+        
+        synchronized (compiledScripts) {
+            CompiledScript script = compiledScripts.get(scriptContent);
+            if (script == null) {
+                script = compiler.compile(scriptContent);
+                compiledScripts.put(scriptContent, script);
+            }
+            return script;
+        }
+    }
+    
+    /**
+     * Keep a script compiled for an owner that runs it over and over. The handle bypasses
+     * the compile cache, so it is not evicted by other scripts.
+     */
+    public ScriptHandle handle(String scriptContent) {
+        if (scriptContent == null) {
+            throw new IllegalArgumentException("Script content cannot be null");
+        }
+        return new ScriptHandle(this, scriptContent);
+    }
+    
+    CompiledScript compileUncached(String scriptContent) {
+        return compiler.compile(scriptContent);
+    }
+    
+    int getFunctionVersion() {
+        return functionVersion.get();
+    }
+    
+    /**
+     * Drop every cached compiled script. Compiled scripts hold direct references to the
+     * functions they call, so the cache has to be flushed whenever the function table changes.
+     * The library is recompiled once for a whole burst of changes, and script handles the
+     * next time they run.
+     */
+    public void invalidateCache() {
+        functionVersion.incrementAndGet();
+        synchronized (compiledScripts) {
+            compiledScripts.clear();
+        }
+        library.invalidate();
+    }
+    
+    public ScriptLibrary getLibrary() {
+        return library;
+    }
+    
+    /**
+     * Read the script limits from the config again, for runs started from now on.
+     */
+    public void reloadSettings() {
+        this.limits = ScriptLimits.load(plugin);
+    }
+    
+    public ExecutionTier getExecutionTier() {
+        return executionTier;
+    }
+    
+    /**
+     * Force scripts into one execution tier, e.g. to benchmark the interpreter against
+     * compiled scripts. Switching to {@link ExecutionTier#INTERPRETED} stops compiled scripts
+     * from using their steps without discarding them.
+     */
+    public void setExecutionTier(ExecutionTier executionTier) {
+        this.executionTier = executionTier;
+    }
+    
+    @Override
+    public ScriptResult execute(CompiledScript script, ScriptContext context) {
+        if (script.isAsync() && context.getFrameCount() == 0 && !context.isBufferingEffects()) {
+            executeAsync(script, context);
+            return ScriptResult.suspended(null);
+        }
+        
+        promote(script);
+        
+        int depth = context.getFrameCount();
+        context.pushFrame(script);
+        
+        ScriptResult result = run(context, depth);
+        if (result.isSuspended() && depth == 0) {
+            scheduleResume(context);
+        }
+        return result;
+    }
+    
+    /**
+     * Run a script on a virtual thread. Everything the script does to the server is queued
+     * and applied in one batch on the main thread once the script finishes or pauses, in
+     * the order the script did it; the future completes after that batch.
+     */
+    @Override
+    public CompletableFuture<ScriptResult> executeAsync(CompiledScript script, ScriptContext context) {
+        if (context.getFrameCount() > 0) {
+            throw new IllegalStateException("Script context is already running");
+        }
+        
+        CompletableFuture<ScriptResult> future = new CompletableFuture<>();
+        context.detachOverlay();
+        context.bufferEffects();
+        promote(script);
+        context.pushFrame(script);
+        context.snapshotServer();
+        asyncExecutor.execute(() -> runAsync(context, future));
+        return future;
+    }
+    
+    private void runAsync(ScriptContext context, CompletableFuture<ScriptResult> future) {
+        runningAsync.add(context);
+        ScriptResult result;
+        try {
+            result = run(context, 0);
+        } finally {
+            runningAsync.remove(context);
+        }
+        List<Runnable> effects = context.drainEffects();
+        if (shuttingDown || !plugin.isEnabled()) {
+            // The server runs no more tasks for this plugin, so the effects are dropped
+            future.complete(result);
+            return;
+        }
+        
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            for (Runnable effect : effects) {
+                try {
+                    effect.run();
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Script effect failed: " + e.getMessage());
+                }
+            }
+            
+            if (result.isSuspended()) {
+                scheduleResume(context);
+            }
+            future.complete(result);
+        });
+    }
+    
+    /**
+     * Start recording time, runs and allocations of every script line, discarding the
+     * previous profile.
+     *
+     * @return False if profiling is already on
+     */
+    public synchronized boolean startProfiling() {
+        if (profiler != null) {
+            return false;
+        }
+        profiler = new ScriptProfiler();
+        lastProfiler = profiler;
+        return true;
+    }
+    
+    /**
+     * @return False if profiling was not on
+     */
+    public synchronized boolean stopProfiling() {
+        ScriptProfiler current = profiler;
+        if (current == null) {
+            return false;
+        }
+        profiler = null;
+        current.stop();
+        return true;
+    }
+    
+    /**
+     * @return The running profile, or the last one if profiling is off, or null if it never ran
+     */
+    public synchronized ScriptProfiler getProfiler() {
+        return lastProfiler;
+    }
+    
+    /**
+     * Names of the library scripts, for profile reports.
+     */
+    public Map<CompiledScript, String> getScriptNames() {
+        Map<CompiledScript, String> names = new IdentityHashMap<>();
+        for (String name : library.getScriptNames()) {
+            CompiledScript script = library.getScript(name);
+            if (script != null) {
+                names.put(script, name);
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * Stop accepting scripts to run off the main thread and wait for the running ones, so
+     * the variables they write reach the stores before those are flushed. Scripts still
+     * running after the timeout are cancelled. Effects of scripts that finish now are dropped.
+     */
+    public void shutdown() {
+        library.stopWatching();
+        shuttingDown = true;
+        asyncExecutor.shutdown();
+        try {
+            if (asyncExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            int late = runningAsync.size();
+            runningAsync.forEach(ScriptContext::cancel);
+            if (!asyncExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                plugin.getLogger().warning(late + " async script(s) did not stop; their variable changes may be lost");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Count a run of the script and compile it once it gets hot. Compilation happens on an
+     * async task so the caller keeps interpreting; the steps are published with a single
+     * volatile write when they are ready.
+     */
+    private void promote(CompiledScript script) {
+        ScriptProfiler profiler = this.profiler;
+        if (profiler != null) {
+            profiler.recordRun(script);
+        }
+        
+        switch (executionTier) {
+            case AUTO:
+                if (script.recordInvocation() == compileThreshold) {
+                    Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                        try {
+                            script.installSteps(stepCompiler.compile(script));
+                        } catch (Exception e) {
+                            plugin.getLogger().warning("Failed to compile script: " + e.getMessage());
+                        }
+                    });
+                }
+                break;
+            
+            case COMPILED:
+                script.recordInvocation();
+                if (!script.isCompiled()) {
+                    script.installSteps(stepCompiler.compile(script));
+                }
+                break;
+            
+            default:
+                script.recordInvocation();
+                break;
+        }
+    }
+    
+    /**
+     * Run the frames of a context above the given depth until they finish, fail or the
+     * script suspends itself.
+     */
+    private ScriptResult run(ScriptContext context, int depth) {
         try {
-            String[] lines = scriptContent.split("\n");
             Object result = null;
-            int lineIndex = 0;
+            boolean useSteps = executionTier != ExecutionTier.INTERPRETED;
+            ScriptProfiler profiler = this.profiler;
             
-            while (lineIndex < lines.length) {
+            while (context.getFrameCount() > depth) {
                 if (context.isTimedOut()) {
                     throw new RuntimeException("Script execution timed out");
                 }
                 
                 if (context.isCancelled()) {
+                    context.unwindFrames(depth);
                     break;
                 }
                 
-                String line = lines[lineIndex].trim();
-                lineIndex++;
-                
-                if (line.isEmpty() || line.startsWith("#")) {
+                ScriptContext.Frame frame = context.currentFrame();
+                Instruction[] instructions = frame.script.instructions();
+                if (frame.instructionPointer >= instructions.length) {
+                    context.popFrame();
                     continue;
                 }
                 
-                // Skip execution if in skip mode (inside an if block that evaluated to false)
-                if (context.isSkipMode()) {
-                    // Process control flow even when skipping
-                    Matcher ifMatcher = IF_PATTERN.matcher(line);
-                    Matcher elseMatcher = ELSE_PATTERN.matcher(line);
-                    Matcher endifMatcher = ENDIF_PATTERN.matcher(line);
-                    
-                    if (ifMatcher.matches()) {
-                        context.pushCondition(false); // Push false when in skip mode
-                    } else if (elseMatcher.matches()) {
-                        context.flipLastCondition();
-                    } else if (endifMatcher.matches()) {
-                        context.popCondition();
-                    }
-                    
-                    continue;
+                // Steps share instruction indices, so this frame may switch tiers here
+                Step[] steps = useSteps ? frame.script.steps() : null;
+                int index = frame.instructionPointer++;
+                if (profiler == null) {
+                    result = steps != null
+                            ? steps[index].execute(frame, context)
+                            : executeInstruction(instructions[index], frame, context);
+                } else {
+                    long bytes = profiler.allocatedBytes();
+                    long start = System.nanoTime();
+                    result = steps != null
+                            ? steps[index].execute(frame, context)
+                            : executeInstruction(instructions[index], frame, context);
+                    long nanos = System.nanoTime() - start;
+                    profiler.record(frame.script, index, nanos, bytes < 0 ? -1 : profiler.allocatedBytes() - bytes);
                 }
                 
-                result = executeLine(line, context);
+                if (context.isSuspended()) {
+                    return ScriptResult.suspended(result);
+                }
             }
             
             return ScriptResult.success(result);
         } catch (Exception e) {
+            context.unwindFrames(depth);
             return ScriptResult.failure(e);
         }
     }
     
-    private Object executeLine(String line, ScriptContext context) {
-        // First check for flow control statements
-        Matcher ifMatcher = IF_PATTERN.matcher(line);
-        if (ifMatcher.matches()) {
-            String condition = ifMatcher.group(1).trim();
-            boolean result = evaluateCondition(condition, context);
-            context.pushCondition(result);
-            return result;
-        }
-        
-        Matcher elseMatcher = ELSE_PATTERN.matcher(line);
-        if (elseMatcher.matches()) {
-            context.flipLastCondition();
-            return null;
-        }
+    private void scheduleResume(ScriptContext context) {
+        // The caller's variables may change once it has returned
+        context.detachOverlay();
+        long ticks = Math.max(1, (context.getSuspendMillis() + 49) / 50);
+        suspendedScripts.add(context);
+        context.setResumeTask(Bukkit.getScheduler().runTaskLater(plugin, () -> resume(context), ticks));
+    }
+    
+    private void resume(ScriptContext context) {
+        suspendedScripts.remove(context);
+        context.clearSuspension();
         
-        Matcher endifMatcher = ENDIF_PATTERN.matcher(line);
-        if (endifMatcher.matches()) {
-            return context.popCondition();
+        Player player = context.getPlayer();
+        if (context.isCancelled() || (player != null && !player.isOnline())) {
+            context.unwindFrames(0);
+            return;
         }
         
-        Matcher loopMatcher = LOOP_PATTERN.matcher(line);
-        if (loopMatcher.matches()) {
-            // Loop logic would go here
-            return null;
+        context.resetStartTime();
+        if (context.isBufferingEffects()) {
+            CompletableFuture<ScriptResult> future = new CompletableFuture<>();
+            future.thenAccept(result -> {
+                if (!result.isSuccess() && !result.isSuspended()) {
+                    plugin.getLogger().warning("Script failed after resuming at line " + context.getCurrentLine()
+                            + ": " + result.getErrorMessage());
+                }
+            });
+            context.snapshotServer();
+            asyncExecutor.execute(() -> runAsync(context, future));
+            return;
         }
         
-        Matcher endloopMatcher = ENDLOOP_PATTERN.matcher(line);
-        if (endloopMatcher.matches()) {
-            // End loop logic would go here
-            return null;
+        ScriptResult result = run(context, 0);
+        if (result.isSuspended()) {
+            scheduleResume(context);
+        } else if (!result.isSuccess()) {
+            plugin.getLogger().warning("Script failed after resuming at line " + context.getCurrentLine()
+                    + ": " + result.getErrorMessage());
         }
+    }
+    
+    @Override
+    public Collection<ScriptContext> getSuspendedScripts() {
+        suspendedScripts.removeIf(ScriptContext::isCancelled);
+        return new ArrayList<>(suspendedScripts);
+    }
+    
+    private Object executeInstruction(Instruction instruction, ScriptContext.Frame frame, ScriptContext context) {
+        String[] args = instruction.args;
+        Template[] templates = instruction.templates;
         
-        // Check for basic command patterns
-        Matcher cmdMatcher = COMMAND_PATTERN.matcher(line);
-        if (cmdMatcher.matches()) {
-            String cmd = cmdMatcher.group(1).trim();
-            String playerName = cmdMatcher.group(2);
-            String args = cmdMatcher.group(3);
-            
-            Player player = playerName != null ? Bukkit.getPlayerExact(playerName) : context.getPlayer();
-            if (player != null) {
-                context.incrementCommandCount();
-                return player.performCommand(cmd + (args != null ? " " + args.trim() : ""));
+        switch (instruction.opcode) {
+            case IF: {
+                boolean result = instruction.condition.test(context);
+                if (!result) {
+                    frame.instructionPointer = instruction.jump;
+                }
+                return result;
             }
-            return false;
-        }
-        
-        Matcher guiMatcher = OPEN_GUI_PATTERN.matcher(line);
-        if (guiMatcher.matches()) {
-            String guiId = guiMatcher.group(1);
-            String targetName = guiMatcher.group(2);
             
-            Player target = targetName != null ? Bukkit.getPlayerExact(targetName) : context.getPlayer();
-            if (target != null) {
-                context.incrementCommandCount();
-                return context.getPlugin().getGuiManager().openGui(target, guiId);
-            }
-            return false;
-        }
-        
-        Matcher closeMatcher = CLOSE_GUI_PATTERN.matcher(line);
-        if (closeMatcher.matches()) {
-            return context.getPlugin().getGuiManager().closeGui(context.getPlayer());
-        }
-        
-        Matcher msgMatcher = MESSAGE_PATTERN.matcher(line);
-        if (msgMatcher.matches()) {
-            String message = msgMatcher.group(1);
-            message = replacePlaceholders(message, context);
-            context.getPlayer().sendMessage(message);
-            return true;
-        }
-        
-        Matcher consoleMatcher = CONSOLE_PATTERN.matcher(line);
-        if (consoleMatcher.matches()) {
-            if (!context.getPlugin().getConfig().getBoolean("script.allow-console-commands", true)) {
-                context.getPlayer().sendMessage("§cConsole commands are disabled in the configuration.");
-                return false;
+            case JUMP:
+            case FUNC:
+                frame.instructionPointer = instruction.jump;
+                return null;
+            
+            case CALL:
+                Calls.call(instruction, frame, context);
+                return null;
+            
+            case RETURN:
+            case ENDFUNC:
+                Calls.ret(templates != null ? templates[0] : null, frame, context);
+                return null;
+            
+            case LOOP: {
+                int iterations = Integer.parseInt(templates[0].render(context).trim());
+                if (iterations > 0) {
+                    frame.pushLoop(iterations);
+                } else {
+                    frame.instructionPointer = instruction.jump;
+                }
+                return null;
             }
             
-            String command = consoleMatcher.group(1);
-            command = replacePlaceholders(command, context);
-            context.incrementCommandCount();
-            return Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
-        }
-        
-        Matcher permMatcher = PERMISSION_PATTERN.matcher(line);
-        if (permMatcher.matches()) {
-            String permission = permMatcher.group(1);
-            return context.getPlayer().hasPermission(permission);
-        }
-        
-        Matcher setMatcher = SET_PATTERN.matcher(line);
-        if (setMatcher.matches()) {
-            String varName = setMatcher.group(1);
-            String value = setMatcher.group(2);
-            value = replacePlaceholders(value, context);
-            context.setVariable(varName, value);
-            return true;
-        }
-        
-        Matcher mathMatcher = MATH_PATTERN.matcher(line);
-        if (mathMatcher.matches()) {
-            String varName = mathMatcher.group(1);
-            String operator = mathMatcher.group(2);
-            String valueStr = mathMatcher.group(3);
-            valueStr = replacePlaceholders(valueStr, context);
+            case ENDLOOP:
+                if (frame.countDownLoop() > 0) {
+                    context.incrementLoopIterations();
+                    frame.instructionPointer = instruction.jump;
+                } else {
+                    frame.popLoop();
+                }
+                return null;
             
-            try {
-                double currentValue = 0;
-                if (context.getVariable(varName) != null) {
-                    currentValue = Double.parseDouble(context.getVariable(varName).toString());
+            case BREAK:
+                frame.popLoop();
+                frame.instructionPointer = instruction.jump;
+                return null;
+            
+            case CONTINUE:
+                frame.instructionPointer = instruction.jump;
+                return null;
+            
+            case FOREACH:
+                if (!ForEach.start(frame, context, templates[1], instruction.slot)) {
+                    frame.instructionPointer = instruction.jump;
+                }
+                return null;
+            
+            case ENDFOREACH:
+                if (ForEach.advance(frame, context, instruction.slot, foreachBudgetNanos)) {
+                    frame.instructionPointer = instruction.jump;
+                }
+                return null;
+            
+            case COMMAND:
+                return Effects.command(context, templates[0].render(context));
+            
+            case OPEN_GUI:
+                return Effects.openGui(context, args[0], args[1]);
+            
+            case CLOSE_GUI:
+                return Effects.closeGui(context);
+            
+            case MESSAGE:
+                return Effects.message(context, templates[0].render(context));
+            
+            case CONSOLE: {
+                if (!context.getPlugin().getConfig().getBoolean("script.allow-console-commands", true)) {
+                    Effects.message(context, "§cConsole commands are disabled in the configuration.");
+                    return false;
                 }
                 
-                double operand = Double.parseDouble(valueStr);
-                double result = 0;
+                return Effects.console(context, templates[0].render(context));
+            }
+            
+            case PERMISSION:
+                return context.hasPermission(args[0]);
+            
+            case SET: {
+                Template value = templates[1];
+                int source = value.singleVariableSlot();
+                if (source >= 0) {
+                    context.copyVariable(source, instruction.slot);
+                } else {
+                    context.setVariable(instruction.slot, value.render(context));
+                }
+                return true;
+            }
+            
+            case MATH: {
+                int slot = instruction.slot;
                 
-                switch (operator) {
-                    case "+":
-                        result = currentValue + operand;
-                        break;
-                    case "-":
-                        result = currentValue - operand;
-                        break;
-                    case "*":
-                        result = currentValue * operand;
-                        break;
-                    case "/":
-                        if (operand == 0) {
-                            throw new ArithmeticException("Division by zero");
-                        }
-                        result = currentValue / operand;
-                        break;
-                    default:
-                        return false;
+                try {
+                    double currentValue = 0;
+                    if (context.hasVariable(slot)) {
+                        currentValue = context.getNumber(slot);
+                    }
+                    
+                    double operand = templates[2].toNumber(context);
+                    double result = 0;
+                    
+                    switch (args[1].charAt(0)) {
+                        case '+':
+                            result = currentValue + operand;
+                            break;
+                        case '-':
+                            result = currentValue - operand;
+                            break;
+                        case '*':
+                            result = currentValue * operand;
+                            break;
+                        case '/':
+                            if (operand == 0) {
+                                throw new ArithmeticException("Division by zero");
+                            }
+                            result = currentValue / operand;
+                            break;
+                        default:
+                            return false;
+                    }
+                    
+                    context.setNumber(slot, result);
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            
+            case GLOBAL_SET:
+                instruction.global.set(templates[1].render(context));
+                return true;
+            
+            case GLOBAL_MATH:
+                try {
+                    instruction.global.apply(args[1].charAt(0), templates[2].toNumber(context));
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            
+            case INCLUDE: {
+                CompiledScript target = instruction.include != null
+                        ? instruction.include.getScript()
+                        : library.getScript(templates[0].render(context));
+                if (target == null) {
+                    return false;
+                }
+                if (context.getFrameCount() > maxIncludeDepth) {
+                    throw new RuntimeException("Includes are nested deeper than " + maxIncludeDepth + " levels");
+                }
+                if (context.isRunning(target)) {
+                    throw new RuntimeException("Include cycle: " + args[0] + " is already running");
                 }
                 
-                context.setVariable(varName, result);
+                promote(target);
+                context.pushFrame(target);
                 return true;
-            } catch (NumberFormatException e) {
-                return false;
             }
-        }
-        
-        // If not a special command, try to execute a registered function
-        if (line.contains(":")) {
-            String[] parts = line.split(":", 2);
-            String functionName = parts[0].trim();
-            String args = parts[1].trim();
             
-            Optional<ScriptFunction> function = getScriptFunction(functionName);
-            if (function.isPresent()) {
-                String[] argArray = args.split("\\s+");
-                for (int i = 0; i < argArray.length; i++) {
-                    argArray[i] = replacePlaceholders(argArray[i], context);
+            case TYPED_FUNCTION:
+                return instruction.call.invoke(context);
+            
+            case FUNCTION: {
+                ScriptFunction function = instruction.function != null
+                        ? instruction.function
+                        : functions.get(instruction.functionName);
+                if (function == null) {
+                    break;
                 }
-                return function.get().execute(context, (Object[]) argArray);
+                
+                return function.execute(context, instruction.arguments.evaluate(context));
             }
+            
+            default:
+                break;
         }
         
-        throw new IllegalArgumentException("Unknown script command: " + line);
+        throw new IllegalArgumentException("Unknown script command: " + instruction.text);
     }
     
     @Override
     public boolean evaluateCondition(String condition, ScriptContext context) {
-        condition = replacePlaceholders(condition, context);
-        
-        // Handle equality comparison
-        Matcher equalsMatcher = EQUALS_PATTERN.matcher(condition);
-        if (equalsMatcher.matches()) {
-            String left = equalsMatcher.group(1).trim();
-            String right = equalsMatcher.group(2).trim();
-            return left.equals(right);
+        Condition compiled = conditionCache.get(condition);
+        if (compiled == null) {
+            compiled = ConditionParser.parse(condition);
+            if (conditionCache.size() >= MAX_CACHED_CONDITIONS) {
+                conditionCache.clear();
+            }
+            conditionCache.put(condition, compiled);
         }
-        
-        // Handle inequality comparison
-        Matcher notEqualsMatcher = NOT_EQUALS_PATTERN.matcher(condition);
-        if (notEqualsMatcher.matches()) {
-            String left = notEqualsMatcher.group(1).trim();
-            String right = notEqualsMatcher.group(2).trim();
-            return !left.equals(right);
+        return compiled.test(context);
+    }
+    
+    // Constant numeric arguments arrive already converted, everything else is parsed
+    
+    private static int intArg(Object[] args, int index, int defaultValue) {
+        if (args.length <= index) {
+            return defaultValue;
         }
-        
-        // Handle numeric comparisons
-        try {
-            // Greater than
-            Matcher greaterMatcher = GREATER_PATTERN.matcher(condition);
-            if (greaterMatcher.matches()) {
-                double left = Double.parseDouble(greaterMatcher.group(1).trim());
-                double right = Double.parseDouble(greaterMatcher.group(2).trim());
-                return left > right;
-            }
-            
-            // Less than
-            Matcher lessMatcher = LESS_PATTERN.matcher(condition);
-            if (lessMatcher.matches()) {
-                double left = Double.parseDouble(lessMatcher.group(1).trim());
-                double right = Double.parseDouble(lessMatcher.group(2).trim());
-                return left < right;
-            }
-            
-            // Greater than or equal
-            Matcher greaterEqualsMatcher = GREATER_EQUALS_PATTERN.matcher(condition);
-            if (greaterEqualsMatcher.matches()) {
-                double left = Double.parseDouble(greaterEqualsMatcher.group(1).trim());
-                double right = Double.parseDouble(greaterEqualsMatcher.group(2).trim());
-                return left >= right;
-            }
-            
-            // Less than or equal
-            Matcher lessEqualsMatcher = LESS_EQUALS_PATTERN.matcher(condition);
-            if (lessEqualsMatcher.matches()) {
-                double left = Double.parseDouble(lessEqualsMatcher.group(1).trim());
-                double right = Double.parseDouble(lessEqualsMatcher.group(2).trim());
-                return left <= right;
-            }
-        } catch (NumberFormatException e) {
-            // If we can't parse as numbers, fall back to string comparison
+        Object arg = args[index];
+        return arg instanceof Number ? ((Number) arg).intValue() : Integer.parseInt(String.valueOf(arg));
+    }
+    
+    private static long longArg(Object[] args, int index, long defaultValue) {
+        if (args.length <= index) {
+            return defaultValue;
         }
-        
-        // If none of the comparison patterns match, treat condition as a boolean itself
-        return Boolean.parseBoolean(condition) || 
-               "true".equalsIgnoreCase(condition) || 
-               "yes".equalsIgnoreCase(condition) || 
-               "1".equals(condition);
+        Object arg = args[index];
+        return arg instanceof Number ? ((Number) arg).longValue() : Long.parseLong(String.valueOf(arg));
+    }
+    
+    private static void sendTitle(ScriptContext context, String title, String subtitle, ScriptArguments args) {
+        int fadeIn = args.getInt(1, 10);
+        int stay = args.getInt(2, 70);
+        int fadeOut = args.getInt(3, 20);
+        Player player = context.getPlayer();
+        context.effect(() -> player.sendTitle(title, subtitle, fadeIn, stay, fadeOut));
     }
     
     private String replacePlaceholders(String text, ScriptContext context) {
-        Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
-        StringBuffer result = new StringBuffer();
-        
-        while (matcher.find()) {
-            String placeholder = matcher.group(1);
-            String replacement = "";
-            
-            if (placeholder.equalsIgnoreCase("player")) {
-                replacement = context.getPlayer().getName();
-            } else if (placeholder.equalsIgnoreCase("uuid")) {
-                replacement = context.getPlayer().getUniqueId().toString();
-            } else if (placeholder.equalsIgnoreCase("world")) {
-                replacement = context.getPlayer().getWorld().getName();
-            } else if (context.getVariables().containsKey(placeholder)) {
-                Object value = context.getVariables().get(placeholder);
-                replacement = value != null ? value.toString() : "";
-            }
-            
-            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        if (text.indexOf('{') < 0) {
+            return text;
         }
-        
-        matcher.appendTail(result);
-        return result.toString();
+        return Template.parse(text).render(context);
     }
     
     @Override
     public boolean registerScriptFunction(String name, ScriptFunction function) {
+        if (defaultsRegistered) {
+            ScriptFunction target = function;
+            function = (context, args) -> {
+                if (!context.isBufferingEffects()) {
+                    return target.execute(context, args);
+                }
+                context.effect(() -> target.execute(context, args));
+                return true;
+            };
+        }
+        return register(name, function);
+    }
+    
+    @Override
+    public boolean registerScriptFunction(String name, ScriptSignature signature, TypedScriptFunction function) {
+        if (defaultsRegistered) {
+            TypedScriptFunction target = function;
+            function = (context, args) -> {
+                if (!context.isBufferingEffects()) {
+                    return target.execute(context, args);
+                }
+                ScriptArguments copy = args.copy();
+                context.effect(() -> target.execute(context, copy));
+                return true;
+            };
+        }
+        return register(name, new TypedFunction(name, signature, function));
+    }
+    
+    private boolean register(String name, ScriptFunction function) {
         if (functions.containsKey(name)) {
             return false;
         }
         
         functions.put(name, function);
+        invalidateCache();
         return true;
     }
     
     @Override
     public boolean unregisterScriptFunction(String name) {
-        return functions.remove(name) != null;
+        if (functions.remove(name) == null) {
+            return false;
+        }
+        
+        invalidateCache();
+        return true;
     }
     
     @Override
@@ -738,12 +1149,14 @@ public class ScriptManagerImpl implements ScriptManager {
     
     @Override
     public ScriptContext createContext(Player player) {
-        return new ScriptContext(player, plugin);
+        return new ScriptContext(player, plugin, limits);
     }
     
     @Override
     public ScriptContext createContext(Player player, Map<String, Object> variables) {
-        return new ScriptContext(player, variables, plugin);
+        ScriptContext context = new ScriptContext(player, plugin, limits);
+        variables.forEach(context::setVariable);
+        return context;
     }
     
     @Override
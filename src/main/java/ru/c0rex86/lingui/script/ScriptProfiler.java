@@ -0,0 +1,204 @@
+package ru.c0rex86.lingui.script;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Wall time, executions and allocated bytes of every script instruction, collected while
+ * profiling is on. Counters are striped by thread so scripts on the main thread and on the
+ * async executor do not contend; stripes are only summed when a report is written.
+ * <p>
+ * Allocations come from the JVM's per-thread allocation counter, so they are an estimate
+ * that includes whatever else the thread allocated in between, and are not available for
+ * scripts on virtual threads.
+ */
+public final class ScriptProfiler {
+    
+    // Per instruction: time, executions, bytes. Slot 0 of each stripe counts runs.
+    private static final int FIELDS = 3;
+    private static final int TIME = 0;
+    private static final int COUNT = 1;
+    private static final int BYTES = 2;
+    private static final int TOP_LINES = 10;
+    
+    private final Map<CompiledScript, Profile> profiles;
+    private final int stripeMask;
+    private final com.sun.management.ThreadMXBean threads;
+    private final long startedAt;
+    private volatile long stoppedAt;
+    
+    ScriptProfiler() {
+        this.profiles = new ConcurrentHashMap<>();
+        this.stripeMask = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) - 1;
+        this.startedAt = System.currentTimeMillis();
+        
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+    }
+    
+    private final class Profile {
+        final CompiledScript script;
+        final AtomicLongArray[] stripes;
+        
+        Profile(CompiledScript script) {
+            this.script = script;
+            this.stripes = new AtomicLongArray[stripeMask + 1];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new AtomicLongArray(1 + script.size() * FIELDS);
+            }
+        }
+        
+        AtomicLongArray stripe() {
+            long id = Thread.currentThread().threadId();
+            return stripes[(int) (id ^ (id >>> 16)) * 0x9E3779B9 >>> 16 & stripeMask];
+        }
+        
+        long sum(int index) {
+            long total = 0;
+            for (AtomicLongArray stripe : stripes) {
+                total += stripe.get(index);
+            }
+            return total;
+        }
+    }
+    
+    /**
+     * @return Bytes allocated by the current thread so far, or -1 if unknown
+     */
+    long allocatedBytes() {
+        return threads != null ? threads.getCurrentThreadAllocatedBytes() : -1;
+    }
+    
+    void recordRun(CompiledScript script) {
+        profile(script).stripe().getAndIncrement(0);
+    }
+    
+    /**
+     * @param bytes Bytes allocated while the instruction ran, negative if unknown
+     */
+    void record(CompiledScript script, int index, long nanos, long bytes) {
+        AtomicLongArray stripe = profile(script).stripe();
+        int base = 1 + index * FIELDS;
+        stripe.getAndAdd(base + TIME, nanos);
+        stripe.getAndIncrement(base + COUNT);
+        if (bytes > 0) {
+            stripe.getAndAdd(base + BYTES, bytes);
+        }
+    }
+    
+    private Profile profile(CompiledScript script) {
+        Profile profile = profiles.get(script);
+        if (profile == null) {
+            profile = profiles.computeIfAbsent(script, Profile::new);
+        }
+        return profile;
+    }
+    
+    void stop() {
+        stoppedAt = System.currentTimeMillis();
+    }
+    
+    public boolean isRunning() {
+        return stoppedAt == 0;
+    }
+    
+    public int getScriptCount() {
+        return profiles.size();
+    }
+    
+    /**
+     * Write a report of every profiled script, slowest first, with its slowest lines.
+     *
+     * @param names Names of library scripts; other scripts are shown by their first line
+     */
+    public void write(File file, Map<CompiledScript, String> names) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists()) {
+            folder.mkdirs();
+        }
+        
+        List<ScriptTotals> totals = new ArrayList<>();
+        for (Profile profile : profiles.values()) {
+            totals.add(new ScriptTotals(profile));
+        }
+        totals.sort(Comparator.comparingLong((ScriptTotals t) -> t.nanos).reversed());
+        
+        long end = stoppedAt != 0 ? stoppedAt : System.currentTimeMillis();
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            out.printf("LinGUi script profile, %.1f s, %d scripts%n", (end - startedAt) / 1000.0, totals.size());
+            if (threads == null) {
+                out.println("Allocations are not available on this JVM");
+            }
+            out.println();
+            
+            for (ScriptTotals script : totals) {
+                String name = names.get(script.profile.script);
+                out.printf("%s%n", name != null ? name : "inline: " + firstLine(script.profile.script));
+                out.printf("  runs %d, time %.3f ms, %.1f us/run, allocated %d KB%n", script.runs,
+                        script.nanos / 1e6, script.runs > 0 ? script.nanos / 1e3 / script.runs : 0.0, script.bytes / 1024);
+                
+                Instruction[] instructions = script.profile.script.instructions();
+                Integer[] order = new Integer[instructions.length];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparingLong((Integer i) -> script.profile.sum(1 + i * FIELDS + TIME)).reversed());
+                
+                for (int i = 0; i < Math.min(TOP_LINES, order.length); i++) {
+                    int base = 1 + order[i] * FIELDS;
+                    long count = script.profile.sum(base + COUNT);
+                    if (count == 0) {
+                        break;
+                    }
+                    long nanos = script.profile.sum(base + TIME);
+                    Instruction instruction = instructions[order[i]];
+                    out.printf("    line %-4d %10d x %10.3f ms %8.2f us %8d KB  %s%n", instruction.line, count, nanos / 1e6,
+                            nanos / 1e3 / count, script.profile.sum(base + BYTES) / 1024, instruction.text);
+                }
+                out.println();
+            }
+        }
+    }
+    
+    private static String firstLine(CompiledScript script) {
+        for (String line : script.getSource().split("\n")) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                return line.length() > 60 ? line.substring(0, 60) + "..." : line;
+            }
+        }
+        return "(empty)";
+    }
+    
+    private static final class ScriptTotals {
+        final Profile profile;
+        final long runs;
+        long nanos;
+        long bytes;
+        
+        ScriptTotals(Profile profile) {
+            this.profile = profile;
+            this.runs = profile.sum(0);
+            for (int i = 0; i < profile.script.size(); i++) {
+                nanos += profile.sum(1 + i * FIELDS + TIME);
+                bytes += profile.sum(1 + i * FIELDS + BYTES);
+            }
+        }
+    }
+}
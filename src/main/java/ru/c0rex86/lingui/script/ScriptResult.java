@@ -5,19 +5,36 @@ public class ScriptResult {
     private final boolean success;
     private final Object result;
     private final Exception error;
+    private final boolean suspended;
     
-    private ScriptResult(boolean success, Object result, Exception error) {
+    private ScriptResult(boolean success, Object result, Exception error, boolean suspended) {
         this.success = success;
         this.result = result;
         this.error = error;
+        this.suspended = suspended;
     }
     
+    // Results are immutable, so the common ones are shared
+    private static final ScriptResult SUCCESS_EMPTY = new ScriptResult(true, null, null, false);
+    private static final ScriptResult SUCCESS_TRUE = new ScriptResult(true, Boolean.TRUE, null, false);
+    private static final ScriptResult SUCCESS_FALSE = new ScriptResult(true, Boolean.FALSE, null, false);
+    
     public static ScriptResult success(Object result) {
-        return new ScriptResult(true, result, null);
+        if (result == null) {
+            return SUCCESS_EMPTY;
+        }
+        if (result instanceof Boolean) {
+            return (Boolean) result ? SUCCESS_TRUE : SUCCESS_FALSE;
+        }
+        return new ScriptResult(true, result, null, false);
     }
     
     public static ScriptResult failure(Exception error) {
-        return new ScriptResult(false, null, error);
+        return new ScriptResult(false, null, error, false);
+    }
+    
+    public static ScriptResult suspended(Object result) {
+        return new ScriptResult(true, result, null, true);
     }
     
     public boolean isSuccess() {
@@ -28,6 +45,13 @@ public class ScriptResult {
         return result;
     }
     
+    /**
+     * @return True if the script stopped at a delay and will resume later from the scheduler
+     */
+    public boolean isSuspended() {
+        return suspended;
+    }
+    
     public Exception getError() {
         return error;
     }
@@ -0,0 +1,12 @@
+package ru.c0rex86.lingui.script;
+
+/**
+ * One instruction of a hot script with its operands already bound, built by
+ * {@link StepCompiler}. Steps keep the instruction indices of the script they were built
+ * from, so a frame can switch from interpreting to steps between any two instructions.
+ */
+@FunctionalInterface
+interface Step {
+    
+    Object execute(ScriptContext.Frame frame, ScriptContext context);
+}
@@ -0,0 +1,303 @@
+package ru.c0rex86.lingui.script;
+
+import ru.c0rex86.lingui.api.ScriptManager.ScriptFunction;
+
+import java.util.Map;
+
+/**
+ * Second tier of script execution. Turns the instructions of a hot script into pre-bound
+ * {@link Step} closures: the opcode switch, operand lookups and constant parsing all happen
+ * here once, leaving each step a direct call. Rarely used instructions fall back to the
+ * interpreter.
+ */
+final class StepCompiler {
+    
+    /**
+     * The interpreter's handler for a single instruction.
+     */
+    @FunctionalInterface
+    interface Fallback {
+        Object execute(Instruction instruction, ScriptContext.Frame frame, ScriptContext context);
+    }
+    
+    private final Map<String, ScriptFunction> functions;
+    private final Fallback fallback;
+    private final long foreachBudgetNanos;
+    
+    StepCompiler(Map<String, ScriptFunction> functions, Fallback fallback, long foreachBudgetNanos) {
+        this.functions = functions;
+        this.fallback = fallback;
+        this.foreachBudgetNanos = foreachBudgetNanos;
+    }
+    
+    Step[] compile(CompiledScript script) {
+        Instruction[] instructions = script.instructions();
+        Step[] steps = new Step[instructions.length];
+        for (int i = 0; i < instructions.length; i++) {
+            steps[i] = compile(instructions[i]);
+        }
+        return steps;
+    }
+    
+    private Step compile(Instruction instruction) {
+        int jump = instruction.jump;
+        
+        switch (instruction.opcode) {
+            case IF: {
+                Condition condition = instruction.condition;
+                return (frame, context) -> {
+                    if (condition.test(context)) {
+                        return true;
+                    }
+                    frame.instructionPointer = jump;
+                    return false;
+                };
+            }
+            
+            case JUMP:
+            case CONTINUE:
+            case FUNC:
+                return (frame, context) -> {
+                    frame.instructionPointer = jump;
+                    return null;
+                };
+            
+            case CALL:
+                return (frame, context) -> {
+                    Calls.call(instruction, frame, context);
+                    return null;
+                };
+            
+            case RETURN:
+            case ENDFUNC: {
+                Template value = instruction.templates != null ? instruction.templates[0] : null;
+                return (frame, context) -> {
+                    Calls.ret(value, frame, context);
+                    return null;
+                };
+            }
+            
+            case LOOP:
+                return loop(instruction.templates[0], jump);
+            
+            case ENDLOOP:
+                return (frame, context) -> {
+                    if (frame.countDownLoop() > 0) {
+                        context.incrementLoopIterations();
+                        frame.instructionPointer = jump;
+                    } else {
+                        frame.popLoop();
+                    }
+                    return null;
+                };
+            
+            case BREAK:
+                return (frame, context) -> {
+                    frame.popLoop();
+                    frame.instructionPointer = jump;
+                    return null;
+                };
+            
+            case FOREACH: {
+                Template source = instruction.templates[1];
+                int slot = instruction.slot;
+                return (frame, context) -> {
+                    if (!ForEach.start(frame, context, source, slot)) {
+                        frame.instructionPointer = jump;
+                    }
+                    return null;
+                };
+            }
+            
+            case ENDFOREACH: {
+                int slot = instruction.slot;
+                long budget = foreachBudgetNanos;
+                return (frame, context) -> {
+                    if (ForEach.advance(frame, context, slot, budget)) {
+                        frame.instructionPointer = jump;
+                    }
+                    return null;
+                };
+            }
+            
+            case COMMAND: {
+                Template command = instruction.templates[0];
+                if (command.isConstant()) {
+                    String text = command.getSource();
+                    return (frame, context) -> Effects.command(context, text);
+                }
+                return (frame, context) -> Effects.command(context, command.render(context));
+            }
+            
+            case MESSAGE: {
+                Template message = instruction.templates[0];
+                if (message.isConstant()) {
+                    String text = message.getSource();
+                    return (frame, context) -> Effects.message(context, text);
+                }
+                return (frame, context) -> Effects.message(context, message.render(context));
+            }
+            
+            case SET:
+                return set(instruction.templates[1], instruction.slot);
+            
+            case MATH:
+                return math(instruction.args[1].charAt(0), instruction.templates[2], instruction.slot);
+            
+            case GLOBAL_SET: {
+                GlobalVariables.Cell cell = instruction.global;
+                Template value = instruction.templates[1];
+                return (frame, context) -> {
+                    cell.set(value.render(context));
+                    return true;
+                };
+            }
+            
+            case GLOBAL_MATH: {
+                GlobalVariables.Cell cell = instruction.global;
+                char operator = instruction.args[1].charAt(0);
+                Template operand = instruction.templates[2];
+                return (frame, context) -> {
+                    try {
+                        cell.apply(operator, operand.toNumber(context));
+                        return true;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                };
+            }
+            
+            case FUNCTION:
+                return function(instruction);
+            
+            case TYPED_FUNCTION: {
+                TypedCall call = instruction.call;
+                return (frame, context) -> call.invoke(context);
+            }
+            
+            default:
+                return (frame, context) -> fallback.execute(instruction, frame, context);
+        }
+    }
+    
+    private static Step loop(Template count, int jump) {
+        if (count.isConstant()) {
+            try {
+                int iterations = Integer.parseInt(count.getSource().trim());
+                return (frame, context) -> {
+                    if (iterations > 0) {
+                        frame.pushLoop(iterations);
+                    } else {
+                        frame.instructionPointer = jump;
+                    }
+                    return null;
+                };
+            } catch (NumberFormatException ignored) {
+                // Report the bad count when the loop is reached, as the interpreter does
+            }
+        }
+        
+        return (frame, context) -> {
+            int iterations = Integer.parseInt(count.render(context).trim());
+            if (iterations > 0) {
+                frame.pushLoop(iterations);
+            } else {
+                frame.instructionPointer = jump;
+            }
+            return null;
+        };
+    }
+    
+    private static Step set(Template value, int slot) {
+        int source = value.singleVariableSlot();
+        if (source >= 0) {
+            return (frame, context) -> {
+                context.copyVariable(source, slot);
+                return true;
+            };
+        }
+        
+        if (value.isConstant()) {
+            String text = value.getSource();
+            return (frame, context) -> {
+                context.setVariable(slot, text);
+                return true;
+            };
+        }
+        
+        return (frame, context) -> {
+            context.setVariable(slot, value.render(context));
+            return true;
+        };
+    }
+    
+    private static Step math(char operator, Template operand, int slot) {
+        switch (operator) {
+            case '+':
+                return (frame, context) -> {
+                    try {
+                        context.setNumber(slot, current(context, slot) + operand.toNumber(context));
+                        return true;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                };
+            case '-':
+                return (frame, context) -> {
+                    try {
+                        context.setNumber(slot, current(context, slot) - operand.toNumber(context));
+                        return true;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                };
+            case '*':
+                return (frame, context) -> {
+                    try {
+                        context.setNumber(slot, current(context, slot) * operand.toNumber(context));
+                        return true;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                };
+            case '/':
+                return (frame, context) -> {
+                    try {
+                        double value = current(context, slot);
+                        double divisor = operand.toNumber(context);
+                        if (divisor == 0) {
+                            throw new ArithmeticException("Division by zero");
+                        }
+                        context.setNumber(slot, value / divisor);
+                        return true;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                };
+            default:
+                return (frame, context) -> false;
+        }
+    }
+    
+    private static double current(ScriptContext context, int slot) {
+        return context.hasVariable(slot) ? context.getNumber(slot) : 0;
+    }
+    
+    private Step function(Instruction instruction) {
+        Arguments arguments = instruction.arguments;
+        ScriptFunction bound = instruction.function;
+        
+        if (bound == null) {
+            // Late binding, same as the interpreter
+            return (frame, context) -> {
+                ScriptFunction function = functions.get(instruction.functionName);
+                if (function == null) {
+                    throw new IllegalArgumentException("Unknown script command: " + instruction.text);
+                }
+                return function.execute(context, arguments.evaluate(context));
+            };
+        }
+        
+        return (frame, context) -> bound.execute(context, arguments.evaluate(context));
+    }
+}
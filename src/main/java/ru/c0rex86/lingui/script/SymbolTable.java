@@ -0,0 +1,60 @@
+package ru.c0rex86.lingui.script;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns variable names used by compiled scripts into slot indices. The table is shared by
+ * every script, so an included script sees its caller's variables in the same slots.
+ * Names are only added by the compiler; variables set from outside under names no script
+ * uses never get a slot.
+ */
+final class SymbolTable {
+    
+    private static final Map<String, Integer> SLOTS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static volatile int size;
+    
+    private SymbolTable() {
+    }
+    
+    static int slotOf(String name) {
+        Integer slot = SLOTS.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        
+        synchronized (SymbolTable.class) {
+            slot = SLOTS.get(name);
+            if (slot != null) {
+                return slot;
+            }
+            
+            int index = size;
+            if (index == names.length) {
+                names = Arrays.copyOf(names, index * 2);
+            }
+            names[index] = name;
+            size = index + 1;
+            SLOTS.put(name, index);
+            return index;
+        }
+    }
+    
+    /**
+     * @return The slot of a name, or -1 if no compiled script uses it
+     */
+    static int find(String name) {
+        Integer slot = SLOTS.get(name);
+        return slot != null ? slot : -1;
+    }
+    
+    static String nameOf(int slot) {
+        return names[slot];
+    }
+    
+    static int size() {
+        return size;
+    }
+}
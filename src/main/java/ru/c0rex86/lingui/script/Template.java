@@ -0,0 +1,261 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text with {@code {placeholder}} slots, split once into literal and slot segments.
+ * Rendering is a single append loop; text without placeholders is returned as is.
+ * Variable placeholders are bound to their {@link SymbolTable} slot when parsed.
+ */
+final class Template {
+    
+    private static final int PLAYER = 0;
+    private static final int UUID = 1;
+    private static final int WORLD = 2;
+    private static final int VARIABLE = 3;
+    private static final int GLOBAL = 4;
+    
+    private final String source;
+    private final String[] literals;
+    private final int[] kinds;
+    private final int[] slots;
+    private final GlobalVariables.Cell[] cells;
+    private final int literalLength;
+    private final boolean numeric;
+    private final double number;
+    
+    private Template(String source, String[] literals, int[] kinds, int[] slots, GlobalVariables.Cell[] cells) {
+        this.source = source;
+        this.literals = literals;
+        this.kinds = kinds;
+        this.slots = slots;
+        this.cells = cells;
+        
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+        
+        double parsed = 0;
+        boolean isNumber = false;
+        if (kinds.length == 0 && looksNumeric(source)) {
+            try {
+                parsed = Double.parseDouble(source);
+                isNumber = true;
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        this.numeric = isNumber;
+        this.number = parsed;
+    }
+    
+    static Template parse(String text) {
+        if (text.indexOf('{') < 0) {
+            return new Template(text, new String[] {text}, new int[0], new int[0], null);
+        }
+        
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                int close = text.indexOf('}', i + 1);
+                if (close > i + 1) {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    names.add(text.substring(i + 1, close));
+                    i = close + 1;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        literals.add(literal.toString());
+        
+        int[] kinds = new int[names.size()];
+        int[] slots = new int[names.size()];
+        GlobalVariables.Cell[] cells = null;
+        for (int k = 0; k < kinds.length; k++) {
+            kinds[k] = kindOf(names.get(k));
+            slots[k] = kinds[k] == VARIABLE ? SymbolTable.slotOf(names.get(k)) : -1;
+            if (kinds[k] == GLOBAL) {
+                if (cells == null) {
+                    cells = new GlobalVariables.Cell[kinds.length];
+                }
+                cells[k] = GlobalVariables.cell(names.get(k));
+            }
+        }
+        
+        return new Template(text, literals.toArray(new String[0]), kinds, slots, cells);
+    }
+    
+    /**
+     * Parse a number without throwing for text that is clearly not one.
+     *
+     * @return The value, or NaN if the text is not numeric
+     */
+    static double toNumberOrNaN(String text) {
+        if (!looksNumeric(text)) {
+            return Double.NaN;
+        }
+        try {
+            return parseNumber(text);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+    
+    /**
+     * {@link Double#parseDouble} with a fast path for plain integers, the usual numbers
+     * stored as text, which allocates nothing.
+     */
+    static double parseNumber(String text) {
+        int length = text.length();
+        boolean negative = length > 1 && text.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        if (length == start || length > 15) {
+            return Double.parseDouble(text);
+        }
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return Double.parseDouble(text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        // -0 is left to parseDouble, which keeps its sign
+        return negative ? (value == 0 ? Double.parseDouble(text) : -value) : value;
+    }
+    
+    private static boolean looksNumeric(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) {
+            return false;
+        }
+        char first = trimmed.charAt(0);
+        return (first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.';
+    }
+    
+    private static int kindOf(String name) {
+        if (name.equalsIgnoreCase("player")) {
+            return PLAYER;
+        } else if (name.equalsIgnoreCase("uuid")) {
+            return UUID;
+        } else if (name.equalsIgnoreCase("world")) {
+            return WORLD;
+        } else if (GlobalVariables.isGlobal(name)) {
+            return GLOBAL;
+        }
+        return VARIABLE;
+    }
+    
+    boolean isConstant() {
+        return kinds.length == 0;
+    }
+    
+    String getSource() {
+        return source;
+    }
+    
+    /**
+     * @return The variable slot if the template is exactly one variable placeholder, otherwise -1
+     */
+    int singleVariableSlot() {
+        if (kinds.length == 1 && kinds[0] == VARIABLE && literals[0].isEmpty() && literals[1].isEmpty()) {
+            return slots[0];
+        }
+        return -1;
+    }
+    
+    /**
+     * @return The global variable if the template is exactly one {@code global.} placeholder, otherwise null
+     */
+    GlobalVariables.Cell singleGlobal() {
+        if (kinds.length == 1 && kinds[0] == GLOBAL && literals[0].isEmpty() && literals[1].isEmpty()) {
+            return cells[0];
+        }
+        return null;
+    }
+    
+    /**
+     * Evaluate the template as a number. Constants are parsed once and single variable
+     * placeholders are read straight from their slot.
+     *
+     * @throws NumberFormatException If the value is not numeric
+     */
+    double toNumber(ScriptContext context) {
+        if (numeric) {
+            return number;
+        }
+        int slot = singleVariableSlot();
+        if (slot >= 0) {
+            return context.getNumber(slot);
+        }
+        GlobalVariables.Cell cell = singleGlobal();
+        if (cell != null) {
+            double value = cell.number();
+            if (Double.isNaN(value)) {
+                throw new NumberFormatException("For input string: \"" + cell.text() + "\"");
+            }
+            return value;
+        }
+        return parseNumber(render(context));
+    }
+    
+    String render(ScriptContext context) {
+        if (kinds.length == 0) {
+            return source;
+        }
+        // A lone name needs no builder, so e.g. "set buyer {player}" allocates nothing
+        if (kinds.length == 1 && literals[0].isEmpty() && literals[1].isEmpty()) {
+            if (kinds[0] == PLAYER) {
+                return context.getPlayer().getName();
+            } else if (kinds[0] == WORLD) {
+                return context.getWorldName();
+            }
+        }
+        
+        StringBuilder result = new StringBuilder(literalLength + kinds.length * 16);
+        for (int i = 0; i < kinds.length; i++) {
+            result.append(literals[i]);
+            appendSlot(result, i, context);
+        }
+        result.append(literals[kinds.length]);
+        return result.toString();
+    }
+    
+    private void appendSlot(StringBuilder result, int index, ScriptContext context) {
+        Player player = context.getPlayer();
+        switch (kinds[index]) {
+            case PLAYER:
+                result.append(player.getName());
+                break;
+            case UUID:
+                result.append(player.getUniqueId().toString());
+                break;
+            case WORLD:
+                result.append(context.getWorldName());
+                break;
+            case GLOBAL:
+                cells[index].appendTo(result);
+                break;
+            default:
+                context.appendVariable(slots[index], result);
+                break;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return source;
+    }
+}
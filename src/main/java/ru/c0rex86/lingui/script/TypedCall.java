@@ -0,0 +1,228 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.Bukkit;
+import org.bukkit.FireworkEffect;
+import org.bukkit.Material;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.entity.Player;
+import ru.c0rex86.lingui.api.ScriptSignature;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A call to a {@link TypedFunction} bound at compile time. Constant arguments are converted
+ * to their parameter type here, once; numbers taken from a single variable are read from
+ * its slot unboxed. A call fills the context's pooled {@link ScriptArguments}, so it
+ * allocates nothing beyond what rendering text placeholders needs.
+ * <p>
+ * Sounds, particles and firework types given as constants are resolved here too, so a bad
+ * name fails the script when it loads. Names that come from placeholders are looked up in
+ * prebuilt maps rather than through {@code valueOf}.
+ */
+final class TypedCall {
+    
+    private static final Map<String, Sound> SOUNDS = index(Sound.values());
+    private static final Map<String, Particle> PARTICLES = index(Particle.values());
+    private static final Map<String, FireworkEffect.Type> FIREWORK_TYPES = index(FireworkEffect.Type.values());
+    
+    private final TypedFunction function;
+    private final ScriptSignature.Type[] types;
+    private final long[] primitives;
+    private final Object[] references;
+    // Null for constant arguments
+    private final Template[] templates;
+    private final int[] slots;
+    
+    private TypedCall(TypedFunction function, ScriptSignature.Type[] types, long[] primitives, Object[] references,
+                      Template[] templates, int[] slots) {
+        this.function = function;
+        this.types = types;
+        this.primitives = primitives;
+        this.references = references;
+        this.templates = templates;
+        this.slots = slots;
+    }
+    
+    /**
+     * @throws IllegalArgumentException If the call does not match the function's signature
+     */
+    static TypedCall bind(TypedFunction function, String[] args) {
+        function.checkArity(args.length);
+        
+        int count = args.length;
+        ScriptSignature.Type[] types = new ScriptSignature.Type[count];
+        long[] primitives = new long[count];
+        Object[] references = new Object[count];
+        Template[] templates = new Template[count];
+        int[] slots = new int[count];
+        
+        ScriptArguments constants = new ScriptArguments();
+        constants.reset(count);
+        for (int i = 0; i < count; i++) {
+            types[i] = function.signature.getType(i);
+            Template template = Template.parse(args[i]);
+            
+            if (!template.isConstant()) {
+                templates[i] = template;
+                slots[i] = template.singleVariableSlot();
+            } else if (types[i] == ScriptSignature.Type.PLAYER) {
+                // Players come and go, so only the name is constant
+                references[i] = args[i];
+            } else {
+                store(function, i, args[i], constants);
+                primitives[i] = constants.primitiveAt(i);
+                references[i] = constants.referenceAt(i);
+            }
+        }
+        
+        return new TypedCall(function, types, primitives, references, templates, slots);
+    }
+    
+    Object invoke(ScriptContext context) {
+        ScriptArguments arguments = context.acquireArguments(types.length);
+        try {
+            for (int i = 0; i < types.length; i++) {
+                load(context, i, arguments);
+            }
+            return function.function.execute(context, arguments);
+        } finally {
+            context.releaseArguments();
+        }
+    }
+    
+    private void load(ScriptContext context, int index, ScriptArguments arguments) {
+        ScriptSignature.Type type = types[index];
+        Template template = templates[index];
+        
+        if (template == null) {
+            if (type == ScriptSignature.Type.PLAYER) {
+                arguments.setReference(index, player(context, (String) references[index]));
+            } else {
+                arguments.setRaw(index, primitives[index], references[index]);
+            }
+            return;
+        }
+        
+        int slot = slots[index];
+        if (slot >= 0 && isNumeric(type)) {
+            double value = context.getNumberOrNaN(slot);
+            if (Double.isNaN(value)) {
+                throw typeError(function, index, String.valueOf(context.getVariable(slot)));
+            }
+            if (type == ScriptSignature.Type.INT) {
+                arguments.setInt(index, (int) value);
+            } else {
+                arguments.setDouble(index, value);
+            }
+            return;
+        }
+        
+        String text = template.render(context);
+        if (type == ScriptSignature.Type.PLAYER) {
+            arguments.setReference(index, player(context, text));
+        } else {
+            store(function, index, text, arguments);
+        }
+    }
+    
+    /**
+     * Convert an argument given as an object (a String from a script, or whatever a plugin
+     * passed) to the parameter type and store it.
+     */
+    static void store(TypedFunction function, int index, Object value, ScriptArguments arguments) {
+        switch (function.signature.getType(index)) {
+            case INT:
+                if (value instanceof Number) {
+                    arguments.setInt(index, ((Number) value).intValue());
+                } else {
+                    try {
+                        arguments.setInt(index, Integer.parseInt(String.valueOf(value).trim()));
+                    } catch (NumberFormatException e) {
+                        throw typeError(function, index, value);
+                    }
+                }
+                break;
+            
+            case DOUBLE: {
+                double number = value instanceof Number
+                        ? ((Number) value).doubleValue()
+                        : Template.toNumberOrNaN(String.valueOf(value).trim());
+                if (Double.isNaN(number)) {
+                    throw typeError(function, index, value);
+                }
+                arguments.setDouble(index, number);
+                break;
+            }
+            
+            case STRING:
+                arguments.setReference(index, String.valueOf(value));
+                break;
+            
+            case PLAYER:
+                arguments.setReference(index, value instanceof Player ? value : Bukkit.getPlayerExact(String.valueOf(value)));
+                break;
+            
+            case MATERIAL: {
+                Material material = value instanceof Material ? (Material) value : Material.matchMaterial(String.valueOf(value));
+                if (material == null) {
+                    throw typeError(function, index, value);
+                }
+                arguments.setReference(index, material);
+                break;
+            }
+            
+            case SOUND:
+                arguments.setReference(index, constant(function, index, value, Sound.class, SOUNDS));
+                break;
+            
+            case PARTICLE:
+                arguments.setReference(index, constant(function, index, value, Particle.class, PARTICLES));
+                break;
+            
+            case FIREWORK_TYPE:
+                arguments.setReference(index,
+                        constant(function, index, value, FireworkEffect.Type.class, FIREWORK_TYPES));
+                break;
+        }
+    }
+    
+    private static <E extends Enum<E>> E constant(TypedFunction function, int index, Object value,
+                                                  Class<E> type, Map<String, E> names) {
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        }
+        E constant = names.get(String.valueOf(value).trim().toUpperCase(Locale.ROOT));
+        if (constant == null) {
+            throw typeError(function, index, value);
+        }
+        return constant;
+    }
+    
+    private static <E extends Enum<E>> Map<String, E> index(E[] values) {
+        Map<String, E> names = new HashMap<>(values.length * 2);
+        for (E value : values) {
+            names.put(value.name(), value);
+        }
+        return names;
+    }
+    
+    private static Player player(ScriptContext context, String name) {
+        Player self = context.getPlayer();
+        if (self != null && self.getName().equals(name)) {
+            return self;
+        }
+        return context.getOnlinePlayer(name);
+    }
+    
+    private static boolean isNumeric(ScriptSignature.Type type) {
+        return type == ScriptSignature.Type.INT || type == ScriptSignature.Type.DOUBLE;
+    }
+    
+    private static IllegalArgumentException typeError(TypedFunction function, int index, Object value) {
+        return new IllegalArgumentException("Argument " + (index + 1) + " of " + function.name + " must be "
+                + function.signature.getType(index).name().toLowerCase() + ", got '" + value + "'");
+    }
+}
@@ -0,0 +1,45 @@
+package ru.c0rex86.lingui.script;
+
+import ru.c0rex86.lingui.api.ScriptManager.ScriptFunction;
+import ru.c0rex86.lingui.api.ScriptManager.TypedScriptFunction;
+import ru.c0rex86.lingui.api.ScriptSignature;
+
+/**
+ * A typed function as it sits in the function table. The compiler recognizes it and binds
+ * calls to a {@link TypedCall}; code that calls it through the plain {@link ScriptFunction}
+ * interface gets its Object arguments converted on every call.
+ */
+final class TypedFunction implements ScriptFunction {
+    
+    final String name;
+    final ScriptSignature signature;
+    final TypedScriptFunction function;
+    
+    TypedFunction(String name, ScriptSignature signature, TypedScriptFunction function) {
+        this.name = name;
+        this.signature = signature;
+        this.function = function;
+    }
+    
+    @Override
+    public Object execute(ScriptContext context, Object... args) {
+        checkArity(args.length);
+        
+        ScriptArguments arguments = context.acquireArguments(args.length);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                TypedCall.store(this, i, args[i], arguments);
+            }
+            return function.execute(context, arguments);
+        } finally {
+            context.releaseArguments();
+        }
+    }
+    
+    void checkArity(int count) {
+        if (count < signature.getRequired() || count > signature.getArity()) {
+            throw new IllegalArgumentException(name + signature + " does not take " + count + " argument"
+                    + (count == 1 ? "" : "s"));
+        }
+    }
+}
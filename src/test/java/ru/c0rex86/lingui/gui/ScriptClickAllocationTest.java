@@ -0,0 +1,80 @@
+package ru.c0rex86.lingui.gui;
+
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.c0rex86.lingui.LinGUi;
+import ru.c0rex86.lingui.script.BenchmarkServer;
+import ru.c0rex86.lingui.script.ScriptManagerImpl;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bytes a click on a scripted GUI item allocates, taken from the thread's allocation counter
+ * over many clicks after a warm-up, in every execution tier.
+ */
+class ScriptClickAllocationTest {
+    
+    static final String SCRIPT = String.join("\n",
+            "set price 100",
+            "math price * 2",
+            "if {price} > 150",
+            "  set label expensive",
+            "endif",
+            "set owner {gui}",
+            "set buyer {player}");
+    
+    private static final int WARMUP_CLICKS = 50_000;
+    private static final int MEASURED_CLICKS = 20_000;
+    // The click variables are one 32 byte object; a context of its own costs about 900 bytes
+    private static final long MAX_BYTES_PER_CLICK = 48;
+    
+    private ScriptManagerImpl scriptManager;
+    private Player player;
+    private GuiPage page;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        LinGUi plugin = BenchmarkServer.createPlugin();
+        plugin.getConfig().set("script.library-refresh-interval", 0);
+        scriptManager = new ScriptManagerImpl(plugin);
+        player = BenchmarkServer.player();
+        page = new GuiBuilder("allocation", "Allocation", 1).build();
+    }
+    
+    @Test
+    void clickAllocatesAlmostNothing() {
+        BiPredicate<Player, GuiPage> handler = GuiManagerImpl.scriptClickHandler(scriptManager,
+                scriptManager.handle(SCRIPT), SCRIPT, false);
+        for (ScriptManagerImpl.ExecutionTier tier : ScriptManagerImpl.ExecutionTier.values()) {
+            scriptManager.setExecutionTier(tier);
+            long perClick = bytesPerClick(handler);
+            assertTrue(perClick <= MAX_BYTES_PER_CLICK, tier + " click allocated " + perClick + " bytes");
+        }
+    }
+    
+    @Test
+    void clickWithoutHandleAllocatesAlmostNothing() {
+        BiPredicate<Player, GuiPage> handler = GuiManagerImpl.scriptClickHandler(scriptManager, null, SCRIPT, false);
+        long perClick = bytesPerClick(handler);
+        assertTrue(perClick <= MAX_BYTES_PER_CLICK, "executeScript click allocated " + perClick + " bytes");
+    }
+    
+    private long bytesPerClick(BiPredicate<Player, GuiPage> handler) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        for (int i = 0; i < WARMUP_CLICKS; i++) {
+            handler.test(player, page);
+        }
+        
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_CLICKS; i++) {
+            handler.test(player, page);
+        }
+        return (threads.getThreadAllocatedBytes(thread) - before) / MEASURED_CLICKS;
+    }
+}
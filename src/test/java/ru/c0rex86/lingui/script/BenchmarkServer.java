@@ -0,0 +1,293 @@
+package ru.c0rex86.lingui.script;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import ru.c0rex86.lingui.LinGUi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * Just enough of a server to run scripts and GUIs in a benchmark or test. Interfaces are
+ * implemented with dynamic proxies that answer the calls scripts make and return zero values
+ * for the rest.
+ * The scheduler runs delayed tasks, async tasks and sync calls immediately and never runs
+ * repeating ones, inventories are plain arrays without viewers and item meta is a map of what
+ * was set on it.
+ */
+public final class BenchmarkServer {
+    
+    private static final UUID PLAYER_ID = UUID.fromString("00000000-0000-0000-0000-00000000b00c");
+    
+    private BenchmarkServer() {
+    }
+    
+    /**
+     * The plugin with its data folder in a temporary directory that holds the bundled scripts.
+     */
+    public static LinGUi createPlugin(String... scripts) throws IOException {
+        Server server = install();
+        
+        Path dataFolder = Files.createTempDirectory("lingui-benchmark");
+        Path scriptFolder = Files.createDirectories(dataFolder.resolve("scripts"));
+        for (String script : scripts) {
+            Files.writeString(scriptFolder.resolve(script + ".script"), loadScript(script));
+        }
+        
+        PluginDescriptionFile description = new PluginDescriptionFile("LinGUi", "benchmark", LinGUi.class.getName());
+        return new Plugin(new JavaPluginLoader(server), description, dataFolder.toFile(),
+                dataFolder.resolve("LinGUi.jar").toFile());
+    }
+    
+    /**
+     * A script bundled with the plugin, from {@code scripts/} in its resources.
+     */
+    static String loadScript(String name) throws IOException {
+        try (InputStream in = BenchmarkServer.class.getResourceAsStream("/scripts/" + name + ".script")) {
+            if (in == null) {
+                throw new IOException("Bundled script not found: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * Make this the server behind {@link Bukkit}, unless there already is one.
+     */
+    public static Server install() {
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(server());
+        }
+        return Bukkit.getServer();
+    }
+    
+    public static Player player() {
+        return player("Benchmark", PLAYER_ID);
+    }
+    
+    /**
+     * Another player, for benchmarks with several viewers.
+     */
+    public static Player player(String name) {
+        return player(name, UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    private static Player player(String name, UUID id) {
+        World world = proxy(World.class, Map.of("getName", "world"));
+        return proxy(Player.class, Map.of(
+                "getName", name,
+                "getDisplayName", name,
+                "getUniqueId", id,
+                "getWorld", world,
+                "getLocation", new Location(world, 0, 64, 0),
+                "hasPermission", true,
+                "isOnline", true,
+                "performCommand", true,
+                "getHealth", 20.0,
+                "getMaxHealth", 20.0));
+    }
+    
+    private static Server server() {
+        BukkitTask task = proxy(BukkitTask.class, Map.of());
+        BukkitScheduler scheduler = (BukkitScheduler) Proxy.newProxyInstance(BenchmarkServer.class.getClassLoader(),
+                new Class<?>[] {BukkitScheduler.class}, (proxy, method, args) -> {
+                    if (method.getReturnType() == BukkitTask.class) {
+                        if (!method.getName().startsWith("runTaskTimer") && args[1] instanceof Runnable) {
+                            ((Runnable) args[1]).run();
+                        }
+                        return task;
+                    }
+                    if (method.getName().equals("callSyncMethod")) {
+                        return CompletableFuture.completedFuture(((Callable<?>) args[1]).call());
+                    }
+                    return zero(method.getReturnType());
+                });
+        
+        Server answers = proxy(Server.class, Map.of(
+                "getName", "Benchmark",
+                "getVersion", "benchmark",
+                "getBukkitVersion", "benchmark",
+                "getLogger", Logger.getLogger("Benchmark"),
+                "getScheduler", scheduler,
+                "getOnlinePlayers", List.of(),
+                "getItemFactory", itemFactory(),
+                "isPrimaryThread", true));
+        return (Server) Proxy.newProxyInstance(BenchmarkServer.class.getClassLoader(),
+                new Class<?>[] {Server.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("createInventory")) {
+                        return inventory((Integer) args[1]);
+                    }
+                    return method.invoke(answers, args);
+                });
+    }
+    
+    private static ItemFactory itemFactory() {
+        return (ItemFactory) Proxy.newProxyInstance(BenchmarkServer.class.getClassLoader(),
+                new Class<?>[] {ItemFactory.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getItemMeta":
+                            return meta(new HashMap<>());
+                        case "isApplicable":
+                            return true;
+                        case "asMetaFor":
+                            return args[0];
+                        case "equals":
+                            return args.length == 2 ? Objects.equals(args[0], args[1]) : proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return zero(method.getReturnType());
+                    }
+                });
+    }
+    
+    private static ItemMeta meta(Map<String, Object> state) {
+        return (ItemMeta) Proxy.newProxyInstance(BenchmarkServer.class.getClassLoader(),
+                new Class<?>[] {ItemMeta.class}, new MetaHandler(state));
+    }
+    
+    /**
+     * Keeps what the setters are given under the property name, for the getters to return.
+     */
+    private static final class MetaHandler implements InvocationHandler {
+        private final Map<String, Object> state;
+        
+        MetaHandler(Map<String, Object> state) {
+            this.state = state;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            int arity = args != null ? args.length : 0;
+            switch (name) {
+                case "clone":
+                    return meta(new HashMap<>(state));
+                case "equals":
+                    return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                            && Proxy.getInvocationHandler(args[0]) instanceof MetaHandler
+                            && state.equals(((MetaHandler) Proxy.getInvocationHandler(args[0])).state);
+                case "hashCode":
+                    return state.hashCode();
+                case "toString":
+                    return "ItemMeta" + state;
+                case "addEnchant":
+                    ((Map<Object, Object>) state.computeIfAbsent("Enchants", k -> new HashMap<>())).put(args[0], args[1]);
+                    return true;
+                case "addItemFlags":
+                    ((Set<Object>) state.computeIfAbsent("ItemFlags", k -> new HashSet<>())).addAll(Arrays.asList((Object[]) args[0]));
+                    return null;
+                default:
+                    break;
+            }
+            if (name.startsWith("set") && arity == 1) {
+                state.put(name.substring(3), args[0]);
+                return zero(method.getReturnType());
+            }
+            if (name.startsWith("has") && arity == 0) {
+                return state.containsKey(name.substring(3));
+            }
+            if (name.startsWith("get") && arity == 0) {
+                Object value = state.get(name.substring(3));
+                return value != null ? value : zero(method.getReturnType());
+            }
+            return zero(method.getReturnType());
+        }
+    }
+    
+    private static Inventory inventory(int size) {
+        ItemStack[] contents = new ItemStack[size];
+        return (Inventory) Proxy.newProxyInstance(BenchmarkServer.class.getClassLoader(),
+                new Class<?>[] {Inventory.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSize":
+                            return size;
+                        case "getItem":
+                            return contents[(Integer) args[0]];
+                        case "setItem":
+                            contents[(Integer) args[0]] = (ItemStack) args[1];
+                            return null;
+                        case "getContents":
+                            return contents.clone();
+                        case "setContents":
+                            ItemStack[] items = (ItemStack[]) args[0];
+                            Arrays.fill(contents, null);
+                            System.arraycopy(items, 0, contents, 0, items.length);
+                            return null;
+                        case "clear":
+                            Arrays.fill(contents, null);
+                            return null;
+                        case "getViewers":
+                            return List.of();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return zero(method.getReturnType());
+                    }
+                });
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Map<String, Object> answers) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    Object answer = answers.get(method.getName());
+                    return answer != null ? answer : zero(method.getReturnType());
+            }
+        };
+        return (T) Proxy.newProxyInstance(BenchmarkServer.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+    
+    private static Object zero(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+    
+    private static final class Plugin extends LinGUi {
+        Plugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+            super(loader, description, dataFolder, file);
+        }
+    }
+}